@@ -16,6 +16,7 @@
 
 package com.musicg.api;
 
+import com.musicg.dsp.SlidingDft;
 import com.musicg.wave.WaveHeader;
 
 /**
@@ -64,4 +65,22 @@ public class ClapApi extends DetectionApi {
     public boolean isClap(byte[] audioBytes) {
         return isSpecificSound(audioBytes);
     }
+
+    /**
+     * @param amplitudes
+     *            decoded amplitudes of a frame
+     * @return true if it a clap
+     */
+    public boolean isClap(short[] amplitudes) {
+        return isSpecificSound(amplitudes);
+    }
+
+    /**
+     * @param slidingDft
+     *            sliding DFT fed with the stream, see createSlidingDft
+     * @return true if the current frame of the stream is a clap
+     */
+    public boolean isClap(SlidingDft slidingDft) {
+        return isSpecificSound(slidingDft);
+    }
 }
\ No newline at end of file
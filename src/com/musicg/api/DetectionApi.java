@@ -16,12 +16,16 @@
 
 package com.musicg.api;
 
+import com.musicg.dsp.FastFourierTransform;
+import com.musicg.dsp.GoertzelBank;
+import com.musicg.dsp.SlidingDft;
 import com.musicg.math.rank.ArrayRankDouble;
 import org.apache.commons.math3.stat.descriptive.moment.StandardDeviation;
 import com.musicg.math.statistics.ZeroCrossingRate;
-import com.musicg.wave.Wave;
+import com.musicg.wave.ChannelPolicy;
+import com.musicg.wave.SampleDecoder;
 import com.musicg.wave.WaveHeader;
-import com.musicg.wave.extension.Spectrogram;
+import com.musicg.wave.extension.LazySpectrogram;
 
 /**
  * Api for detecting different sounds
@@ -42,21 +46,22 @@ public class DetectionApi {
     protected int minNumZeroCross, maxNumZeroCross;
     protected int lowerBoundary, upperBoundary;
     protected int numRobust;
+    private boolean bandChecking; // opt-in Goertzel check of narrow bands
+    private GoertzelBank goertzelBank; // filters of the last narrow band
+    private ChannelPolicy channelPolicy = ChannelPolicy.DOWNMIX;
+    private SampleDecoder sampleDecoder; // decoder of the channel policy
 
     /**
-     * Constructor, support mono Wav only, 4096 sample byte size for 44100Hz
-     * 16bit mono wav
+     * Constructor, 4096 sample byte size for 44100Hz 16bit mono wav. The
+     * channels of a multichannel wav are downmixed, see
+     * {@link #setChannelPolicy(ChannelPolicy)}
      * 
      * @param waveHeader
      *            the WAV file header
      */
     public DetectionApi(WaveHeader waveHeader) {
-        if (waveHeader.getChannels() == 1) {
-            this.waveHeader = waveHeader;
-            init();
-        } else {
-            System.err.println("DetectionAPI supports mono Wav only");
-        }
+        this.waveHeader = waveHeader;
+        init();
     }
 
     /**
@@ -75,82 +80,262 @@ public class DetectionApi {
      */
     public boolean isSpecificSound(byte[] audioBytes) {
 
-        int bytesPerSample = waveHeader.getBitsPerSample() / 8;
-        int numSamples = audioBytes.length / bytesPerSample;
+        if (sampleDecoder == null) {
+            sampleDecoder = new SampleDecoder(waveHeader, channelPolicy);
+        }
+        int numSamples = sampleDecoder.getNumSamples(audioBytes.length);
+
+        // numSamples required to be a power of 2
+        if (numSamples > 0 && Integer.bitCount(numSamples) == 1) {
+            setFftSampleSize(numSamples);
+
+            // the channels are handled while decoding the bytes of this frame
+            short[][] signals = new short[sampleDecoder.getNumSignals()][];
+            for (int i = 0; i < signals.length; i++) {
+                signals[i] = new short[numSamples];
+            }
+            sampleDecoder.decode(audioBytes, 0, numSamples, signals, 0);
+
+            // with a signal per channel, the sound in any of them is enough
+            for (int i = 0; i < signals.length; i++) {
+                if (isSpecificFrame(signals[i])) {
+                    return true;
+                }
+            }
+
+        } else {
+            System.out.println("The sample size must be a power of 2");
+        }
+
+        return false;
+    }
+
+    /**
+     * Determine the decoded amplitudes of a frame contain a specific sound or
+     * not, e.g. a block read by a {@link com.musicg.wave.WaveReader}
+     * 
+     * @param amplitudes
+     *            amplitudes of one signal, the number of them needed to be a
+     *            number to power of 2
+     * @return true if the amplitudes contain the specified sound
+     */
+    public boolean isSpecificSound(short[] amplitudes) {
+        int numSamples = amplitudes.length;
 
         // numSamples required to be a power of 2
         if (numSamples > 0 && Integer.bitCount(numSamples) == 1) {
-            fftSampleSize = numSamples;
-            numFrequencyUnit = fftSampleSize / 2;
-
-            // frequency could be caught within the half of nSamples according
-            // to Nyquist theory
-            unitFrequency = (double) waveHeader.getSampleRate() / 2
-                    / numFrequencyUnit;
-
-            // set boundary
-            lowerBoundary = (int) (highPass / unitFrequency);
-            upperBoundary = (int) (lowPass / unitFrequency);
-            // end set boundary
-
-            Wave wave = new Wave(waveHeader, audioBytes); // audio bytes of this
-                                                          // frame
-            short[] amplitudes = wave.getSampleAmplitudes();
-
-            // spectrum for the clip
-            Spectrogram spectrogram = wave.getSpectrogram(fftSampleSize, 0);
-
-            double[][] spectrogramData = spectrogram
-                    .getAbsoluteSpectrogramData();
-
-            // since fftSampleSize==numSamples, there're only one spectrum which
-            // is thisFrameSpectrogramData[0]
-            double[] spectrum = spectrogramData[0];
-
-            int frequencyUnitRange = upperBoundary - lowerBoundary + 1;
-            double[] rangedSpectrum = new double[frequencyUnitRange];
-            System.arraycopy(spectrum, lowerBoundary, rangedSpectrum, 0,
-                    rangedSpectrum.length);
-
-            if (frequencyUnitRange <= spectrum.length) {
-
-                if (isPassedIntensity(spectrum)) {
-                    if (isPassedStandardDeviation(spectrogramData)) {
-                        if (isPassedZeroCrossingRate(amplitudes)) {
-                            if (isPassedFrequency(rangedSpectrum)) {
-                                return true;
-                            }
+            setFftSampleSize(numSamples);
+            return isSpecificFrame(amplitudes);
+        }
+
+        System.out.println("The sample size must be a power of 2");
+        return false;
+    }
+
+    // the checks on the amplitudes of a frame, fftSampleSize of them
+    private boolean isSpecificFrame(short[] amplitudes) {
+        if (isNarrowBand()) {
+            return isSpecificSoundInBand(amplitudes);
+        }
+
+        // spectrum for the clip, only the absolute one is needed
+        LazySpectrogram spectrogram = new LazySpectrogram(amplitudes,
+                waveHeader.getSampleRate(), fftSampleSize, 0, 1);
+
+        // since fftSampleSize==numSamples, there're only one spectrum which
+        // is thisFrameSpectrogramData[0]
+        double[] spectrum = spectrogram.getAbsoluteFrame(0).clone();
+        double[][] spectrogramData = new double[][] { spectrum };
+
+        int frequencyUnitRange = upperBoundary - lowerBoundary + 1;
+        double[] rangedSpectrum = new double[frequencyUnitRange];
+        System.arraycopy(spectrum, lowerBoundary, rangedSpectrum, 0,
+                rangedSpectrum.length);
+
+        if (frequencyUnitRange <= spectrum.length) {
+
+            if (isPassedIntensity(spectrum)) {
+                if (isPassedStandardDeviation(spectrogramData)) {
+                    if (isPassedZeroCrossingRate(amplitudes)) {
+                        if (isPassedFrequency(rangedSpectrum)) {
+                            return true;
                         }
                     }
                 }
-
-                /*
-                 * // run all checking for debug boolean isPassedChecking =
-                 * true; // rule 1: check the intensity of this frame
-                 * isPassedChecking &= isPassedIntensity(spectrum); // rule 2:
-                 * check the frequency of this frame isPassedChecking &=
-                 * isPassedFrequency(rangedSpectrum); // rule 3: check the zero
-                 * crossing rate of this frame isPassedChecking &=
-                 * isPassedZeroCrossingRate(amplitudes); // rule 4: check the
-                 * standard deviation of this frame with reference of previous
-                 * frames isPassedChecking &=
-                 * isPassedStandardDeviation(spectrogramData);
-                 * System.out.println("Result: " + isPassedChecking + "\n");
-                 * return isPassedChecking; // end run all checking for debug
-                 */
-
-            } else {
-                System.err
-                        .println("is error: the wave needed to be higher sample rate");
             }
 
+            /*
+             * // run all checking for debug boolean isPassedChecking =
+             * true; // rule 1: check the intensity of this frame
+             * isPassedChecking &= isPassedIntensity(spectrum); // rule 2:
+             * check the frequency of this frame isPassedChecking &=
+             * isPassedFrequency(rangedSpectrum); // rule 3: check the zero
+             * crossing rate of this frame isPassedChecking &=
+             * isPassedZeroCrossingRate(amplitudes); // rule 4: check the
+             * standard deviation of this frame with reference of previous
+             * frames isPassedChecking &=
+             * isPassedStandardDeviation(spectrogramData);
+             * System.out.println("Result: " + isPassedChecking + "\n");
+             * return isPassedChecking; // end run all checking for debug
+             */
+
         } else {
-            System.out.println("The sample size must be a power of 2");
+            System.err
+                    .println("is error: the wave needed to be higher sample rate");
         }
 
         return false;
     }
 
+    /**
+     * Set how the channels of a multichannel wav are checked
+     * 
+     * @param channelPolicy
+     *            ChannelPolicy.DOWNMIX to check the average of the channels,
+     *            a single channel, or ChannelPolicy.PER_CHANNEL to find the
+     *            sound in any channel
+     */
+    public void setChannelPolicy(ChannelPolicy channelPolicy) {
+        this.channelPolicy = channelPolicy;
+        this.sampleDecoder = null;
+    }
+
+    /**
+     * @return how the channels of a multichannel wav are checked
+     */
+    public ChannelPolicy getChannelPolicy() {
+        return channelPolicy;
+    }
+
+    /**
+     * Set whether the frames of a narrow band are checked by Goertzel filters
+     * on the band instead of a FFT. The band check is cheaper but it is not
+     * the same detection: the intensity is averaged over the band and the
+     * standard deviation is not checked, so a frame may pass one check and
+     * fail the other. Off by default.
+     * 
+     * @param bandChecking
+     *            true to check narrow bands with isSpecificSoundInBand
+     */
+    public void setBandChecking(boolean bandChecking) {
+        this.bandChecking = bandChecking;
+    }
+
+    /**
+     * @return true if the frames of a narrow band are checked by Goertzel
+     *         filters
+     */
+    public boolean isBandChecking() {
+        return bandChecking;
+    }
+
+    /**
+     * Whether the band checking is on and the band
+     * lowerBoundary..upperBoundary is narrow enough for Goertzel filters on
+     * its units to be cheaper than a FFT of the frame
+     * 
+     * @return true if the frames are checked by isSpecificSoundInBand
+     */
+    protected boolean isNarrowBand() {
+        if (!bandChecking) {
+            return false;
+        }
+        int numUnits = upperBoundary - lowerBoundary + 1;
+        // two filters of fftSampleSize steps per unit against about
+        // log2(fftSampleSize) passes of the FFT
+        return upperBoundary < FastFourierTransform
+                .getNumFrequencyUnit(fftSampleSize)
+                && numUnits * 2 <= Integer.numberOfTrailingZeros(fftSampleSize);
+    }
+
+    /**
+     * Determine a frame contains a specific sound or not, computing only the
+     * frequency units lowerBoundary..upperBoundary. The average intensity is
+     * the one of these units instead of the whole spectrum and the standard
+     * deviation check, which needs the whole spectrum, is not run.
+     * 
+     * @param amplitudes
+     *            amplitudes of the frame, fftSampleSize of them
+     * @return true if the frame passes the intensity, zero crossing rate and
+     *         frequency checks
+     */
+    protected boolean isSpecificSoundInBand(short[] amplitudes) {
+        if (goertzelBank == null
+                || goertzelBank.getFftSampleSize() != fftSampleSize
+                || goertzelBank.getFromUnit() != lowerBoundary
+                || goertzelBank.getToUnit() != upperBoundary) {
+            goertzelBank = new GoertzelBank(fftSampleSize, lowerBoundary,
+                    upperBoundary);
+        }
+        goertzelBank.transform(amplitudes, 0);
+        double[] rangedSpectrum = goertzelBank.getMagnitudes();
+
+        return isPassedIntensity(rangedSpectrum)
+                && isPassedZeroCrossingRate(amplitudes)
+                && isPassedFrequency(rangedSpectrum);
+    }
+
+    /**
+     * Create a sliding DFT over the frequency units checked by this api, for
+     * detecting the sound in a stream of amplitudes. See
+     * {@link #isSpecificSound(SlidingDft)}
+     * 
+     * @param fftSampleSize
+     *            number of amplitudes in a frame, the value needed to be a
+     *            number to power of 2
+     * @return sliding DFT over the units lowerBoundary..upperBoundary
+     */
+    public SlidingDft createSlidingDft(int fftSampleSize) {
+        if (fftSampleSize < 4 || Integer.bitCount(fftSampleSize) != 1) {
+            throw new IllegalArgumentException(
+                    "The sample size must be a power of 2");
+        }
+        setFftSampleSize(fftSampleSize);
+        int numUnits = FastFourierTransform.getNumFrequencyUnit(fftSampleSize);
+        int toUnit = Math.min(upperBoundary, numUnits - 1);
+        int fromUnit = Math.min(lowerBoundary, toUnit);
+        return new SlidingDft(fftSampleSize, fromUnit, toUnit);
+    }
+
+    /**
+     * Determine the current frame of a stream contains a specific sound or
+     * not, without doing a FFT on it. Only the intensity and frequency checks
+     * are run, on the frequency units of the sliding DFT: the average
+     * intensity is the one of these units instead of the whole spectrum.
+     * 
+     * @param slidingDft
+     *            sliding DFT created by {@link #createSlidingDft(int)} and fed
+     *            with the amplitudes of the stream
+     * @return true if the current frame passes the intensity and frequency
+     *         checks, false if it does not or the frame is not full yet
+     */
+    public boolean isSpecificSound(SlidingDft slidingDft) {
+        if (!slidingDft.isFull()) {
+            return false;
+        }
+        setFftSampleSize(slidingDft.getFftSampleSize());
+
+        double[] rangedSpectrum = slidingDft.getMagnitudes();
+        return isPassedIntensity(rangedSpectrum)
+                && isPassedFrequency(rangedSpectrum);
+    }
+
+    // frequency units and boundaries for frames of fftSampleSize samples
+    private void setFftSampleSize(int fftSampleSize) {
+        this.fftSampleSize = fftSampleSize;
+        numFrequencyUnit = fftSampleSize / 2;
+
+        // frequency could be caught within the half of nSamples according
+        // to Nyquist theory
+        unitFrequency = (double) waveHeader.getSampleRate() / 2
+                / numFrequencyUnit;
+
+        // set boundary
+        lowerBoundary = (int) (highPass / unitFrequency);
+        upperBoundary = (int) (lowPass / unitFrequency);
+        // end set boundary
+    }
+
     protected void normalizeSpectrogramData(double[][] spectrogramData) {
 
         // normalization of absoultSpectrogram
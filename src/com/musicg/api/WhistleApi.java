@@ -16,6 +16,7 @@
 
 package com.musicg.api;
 
+import com.musicg.dsp.SlidingDft;
 import com.musicg.wave.WaveHeader;
 
 /**
@@ -61,4 +62,20 @@ public class WhistleApi extends DetectionApi{
 	public boolean isWhistle(byte[] audioBytes){
 		return isSpecificSound(audioBytes);
 	}
+
+	/**
+	 * @param amplitudes the decoded amplitudes of a frame
+	 * @return true if sound is a whistle
+	 */
+	public boolean isWhistle(short[] amplitudes){
+		return isSpecificSound(amplitudes);
+	}
+
+	/**
+	 * @param slidingDft sliding DFT fed with the stream, see createSlidingDft
+	 * @return true if the current frame of the stream is a whistle
+	 */
+	public boolean isWhistle(SlidingDft slidingDft){
+		return isSpecificSound(slidingDft);
+	}
 }
\ No newline at end of file
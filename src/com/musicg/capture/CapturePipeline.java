@@ -0,0 +1,552 @@
+/*
+ * Copyright (C) 2011 Jacquet Wong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.musicg.capture;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.TargetDataLine;
+
+import com.musicg.api.DetectionApi;
+import com.musicg.wave.WaveHeader;
+import com.musicg.wave.WaveReader;
+
+/**
+ * Captures audio from a line in, or from any stream of samples, and runs
+ * detection apis on it as it arrives.
+ *
+ * A capture thread reads frames of fftSampleSize amplitudes into a
+ * {@link FrameRingBuffer}; a dispatch thread takes them and checks each
+ * one with the registered detection apis, reporting the results to the
+ * listeners. A frame is checked as soon as its last sample is read, so while
+ * the detections keep up with the capture a sound is reported within one
+ * frame of the end of the frame holding it. The latency of both stages and
+ * the frames that waited longer than that are measured.
+ *
+ * When the detections fall behind and the queue is full, the capture either
+ * waits for a free frame, the right choice for a file, or drops the frame
+ * read, the right choice for a line that overruns if it is not read in time.
+ *
+ * @author Jacquet Wong
+ */
+public class CapturePipeline {
+
+    /**
+     * Default number of frames queued between the capture and the detections
+     */
+    public static final int DEFAULT_QUEUE_CAPACITY = 16;
+
+    private final WaveReader reader;
+    private final TargetDataLine line; // null for a stream
+    private final int fftSampleSize;
+    private final long frameDuration; // ns
+    private final List<DetectionApi> detectionApis;
+    private final List<DetectionListener> listeners;
+    private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+    private boolean dropFrames;
+    private WaitStrategy waitStrategy = WaitStrategy.PARK;
+
+    private FrameRingBuffer queue;
+    private Thread captureThread;
+    private Thread dispatchThread;
+    private volatile boolean running;
+    private volatile IOException error;
+    private volatile RuntimeException dispatchError;
+    private volatile long endSequence = -1; // frame left empty at the end
+
+    // metrics, each written by one thread only
+    private volatile long capturedFrames;
+    private volatile long droppedFrames;
+    private volatile long producerWaits;
+    private volatile int maxQueuedFrames;
+    private volatile long dispatchedFrames;
+    private volatile long totalQueueLatency;
+    private volatile long maxQueueLatency;
+    private volatile long totalDetectionLatency;
+    private volatile long maxDetectionLatency;
+    private volatile long lateFrames;
+
+    /**
+     * Constructor, for a stream of sample bytes, e.g. a file standing in for
+     * a line
+     *
+     * @param waveHeader
+     *            header describing the samples of the stream
+     * @param inputStream
+     *            stream at the first sample byte
+     * @param fftSampleSize
+     *            number of amplitudes of a frame checked by the detection
+     *            apis, the value needed to be a number to power of 2
+     */
+    public CapturePipeline(WaveHeader waveHeader, InputStream inputStream,
+            int fftSampleSize) {
+        this(waveHeader, inputStream, null, fftSampleSize);
+    }
+
+    /**
+     * Constructor, for an opened line. The line is started by start() and
+     * stopped by stop(), closing it is left to the caller. The frames read
+     * while the queue is full are dropped, see setDropFrames.
+     *
+     * @param line
+     *            the line, opened with a PCM format: signed little endian
+     *            samples, or 8 bit unsigned ones
+     * @param fftSampleSize
+     *            number of amplitudes of a frame checked by the detection
+     *            apis, the value needed to be a number to power of 2
+     */
+    public CapturePipeline(TargetDataLine line, int fftSampleSize) {
+        this(getWaveHeader(line.getFormat()), new AudioInputStream(line),
+                line, fftSampleSize);
+        this.dropFrames = true;
+    }
+
+    private CapturePipeline(WaveHeader waveHeader, InputStream inputStream,
+            TargetDataLine line, int fftSampleSize) {
+        if (fftSampleSize < 4 || Integer.bitCount(fftSampleSize) != 1) {
+            throw new IllegalArgumentException(
+                    "The sample size must be a power of 2");
+        }
+        this.reader = new WaveReader(waveHeader, inputStream);
+        this.line = line;
+        this.detectionApis = new CopyOnWriteArrayList<DetectionApi>();
+        this.listeners = new CopyOnWriteArrayList<DetectionListener>();
+        this.fftSampleSize = fftSampleSize;
+        this.frameDuration = fftSampleSize * 1000000000L
+                / waveHeader.getSampleRate();
+    }
+
+    // the header of the samples of a line
+    private static WaveHeader getWaveHeader(AudioFormat format) {
+        int bits = format.getSampleSizeInBits();
+        boolean signed = format.getEncoding().equals(
+                AudioFormat.Encoding.PCM_SIGNED)
+                && bits > 8 && !format.isBigEndian();
+        boolean unsigned = format.getEncoding().equals(
+                AudioFormat.Encoding.PCM_UNSIGNED)
+                && bits == 8;
+        if (!signed && !unsigned) {
+            throw new IllegalArgumentException("Unsupported capture format "
+                    + format);
+        }
+        return new WaveHeader((int) format.getSampleRate(),
+                format.getChannels(), bits);
+    }
+
+    /**
+     * Add a detection api, the frames are checked with it from the next one
+     * on. It is only used by the dispatch thread.
+     *
+     * @param detectionApi
+     *            the detection api, e.g. a WhistleApi
+     */
+    public void addDetectionApi(DetectionApi detectionApi) {
+        detectionApis.add(detectionApi);
+    }
+
+    /**
+     * @param detectionApi
+     *            the detection api to remove
+     */
+    public void removeDetectionApi(DetectionApi detectionApi) {
+        detectionApis.remove(detectionApi);
+    }
+
+    /**
+     * @param listener
+     *            listener of the results, called on the dispatch thread
+     */
+    public void addDetectionListener(DetectionListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * @param listener
+     *            the listener to remove
+     */
+    public void removeDetectionListener(DetectionListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Set the number of frames queued between the capture and the
+     * detections, before start()
+     *
+     * @param queueCapacity
+     *            number of frames, rounded up to a power of 2
+     */
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * @return number of frames queued between the capture and the detections
+     */
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * Set what the capture does when the queue is full, before start()
+     *
+     * @param dropFrames
+     *            true to drop the frame read (default for a line), false to
+     *            wait for a free frame (default for a stream)
+     */
+    public void setDropFrames(boolean dropFrames) {
+        this.dropFrames = dropFrames;
+    }
+
+    /**
+     * @return true if the frames read while the queue is full are dropped
+     */
+    public boolean isDropFrames() {
+        return dropFrames;
+    }
+
+    /**
+     * Set how the capture and the dispatch threads wait for each other,
+     * before start()
+     *
+     * @param waitStrategy
+     *            the wait strategy, WaitStrategy.PARK by default
+     */
+    public void setWaitStrategy(WaitStrategy waitStrategy) {
+        this.waitStrategy = waitStrategy;
+    }
+
+    /**
+     * @return how the capture and the dispatch threads wait for each other
+     */
+    public WaitStrategy getWaitStrategy() {
+        return waitStrategy;
+    }
+
+    /**
+     * Start the capture and the dispatch threads, and the line
+     */
+    public synchronized void start() {
+        if (captureThread != null) {
+            throw new IllegalStateException("The capture is already started");
+        }
+        queue = new FrameRingBuffer(queueCapacity, fftSampleSize, false,
+                waitStrategy);
+        running = true;
+
+        dispatchThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                dispatch();
+            }
+        }, "musicg-dispatch");
+        captureThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                capture();
+            }
+        }, "musicg-capture");
+        dispatchThread.setDaemon(true);
+        captureThread.setDaemon(true);
+
+        if (line != null) {
+            line.start();
+        }
+        dispatchThread.start();
+        captureThread.start();
+    }
+
+    /**
+     * Stop the capture, the frames queued are still checked. A capture
+     * blocked on a stream ends with the next read.
+     */
+    public void stop() {
+        running = false;
+        if (line != null) {
+            line.stop();
+        }
+    }
+
+    /**
+     * Wait for the end of the capture and of the detections, at the end of
+     * the stream or after stop()
+     *
+     * @throws InterruptedException
+     *             if interrupted while waiting
+     */
+    public void join() throws InterruptedException {
+        Thread capture;
+        Thread dispatch;
+        synchronized (this) {
+            capture = captureThread;
+            dispatch = dispatchThread;
+        }
+        if (capture != null) {
+            capture.join();
+            dispatch.join();
+        }
+    }
+
+    /**
+     * @return true while the capture or the detections run
+     */
+    public boolean isRunning() {
+        Thread dispatch = dispatchThread;
+        return dispatch != null && dispatch.isAlive();
+    }
+
+    /**
+     * @return the error that ended the capture, null if none
+     */
+    public IOException getError() {
+        return error;
+    }
+
+    /**
+     * @return the exception of a detection api or a listener that ended the
+     *         dispatch, and the capture with it, null if none
+     */
+    public RuntimeException getDispatchError() {
+        return dispatchError;
+    }
+
+    private void capture() {
+        short[] dropped = new short[fftSampleSize];
+        long sequence = -1;
+        try {
+            while (running) {
+                sequence = queue.tryClaim(1);
+                if (sequence < 0 && !dropFrames) {
+                    producerWaits++;
+                    sequence = queue.claim(1);
+                }
+                if (sequence < 0 && queue.isClosed()) {
+                    // the dispatch failed
+                    break;
+                }
+
+                if (!readFrame(sequence < 0 ? dropped : queue
+                        .getFrame(sequence))) {
+                    break;
+                }
+
+                if (sequence < 0) {
+                    droppedFrames++;
+                } else {
+                    queue.setTimestamp(sequence, System.nanoTime());
+                    queue.publish(sequence, 1);
+                    sequence = -1;
+                    capturedFrames++;
+                    int queued = queue.size();
+                    if (queued > maxQueuedFrames) {
+                        maxQueuedFrames = queued;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            error = e;
+            System.err.println("Capture error: " + e.getMessage());
+        } finally {
+            if (sequence >= 0) {
+                // a claimed frame is always published, the one not read
+                // marks the end for the dispatch
+                endSequence = sequence;
+                queue.publish(sequence, 1);
+            }
+            // the dispatch ends once the frames left are checked
+            queue.close();
+        }
+    }
+
+    // read a whole frame, false at the end of the stream
+    private boolean readFrame(short[] frame) throws IOException {
+        int length = 0;
+        while (length < frame.length) {
+            int n = reader.read(frame, length, frame.length - length);
+            if (n < 0) {
+                return false;
+            }
+            length += n;
+        }
+        return true;
+    }
+
+    private void dispatch() {
+        try {
+            dispatchFrames();
+        } catch (RuntimeException e) {
+            dispatchError = e;
+            System.err.println("Dispatch error: " + e);
+        } finally {
+            // a capture waiting for a free frame returns
+            stop();
+            queue.close();
+        }
+    }
+
+    private void dispatchFrames() {
+        long frameNumber = 0;
+        while (true) {
+            long sequence = queue.next(1);
+            if (sequence < 0) {
+                break;
+            }
+            if (sequence == endSequence) {
+                queue.release(sequence, 1);
+                break;
+            }
+            short[] frame = queue.getFrame(sequence);
+
+            long start = System.nanoTime();
+            long queueLatency = start - queue.getTimestamp(sequence);
+
+            for (DetectionApi detectionApi : detectionApis) {
+                boolean detected = detectionApi.isSpecificSound(frame);
+                for (DetectionListener listener : listeners) {
+                    listener.onDetection(detectionApi, frameNumber, detected);
+                }
+            }
+            queue.release(sequence, 1);
+            frameNumber++;
+
+            long detectionLatency = System.nanoTime() - start;
+            totalQueueLatency += queueLatency;
+            totalDetectionLatency += detectionLatency;
+            if (queueLatency > maxQueueLatency) {
+                maxQueueLatency = queueLatency;
+            }
+            if (detectionLatency > maxDetectionLatency) {
+                maxDetectionLatency = detectionLatency;
+            }
+            if (queueLatency + detectionLatency > frameDuration) {
+                lateFrames++;
+            }
+            dispatchedFrames = frameNumber;
+        }
+    }
+
+    /**
+     * @return number of amplitudes of a frame
+     */
+    public int getFftSampleSize() {
+        return fftSampleSize;
+    }
+
+    /**
+     * @return duration of a frame in ns, the latency aimed at
+     */
+    public long getFrameDuration() {
+        return frameDuration;
+    }
+
+    /**
+     * @return number of frames read and queued
+     */
+    public long getCapturedFrameCount() {
+        return capturedFrames;
+    }
+
+    /**
+     * @return number of frames read while the queue was full and dropped
+     */
+    public long getDroppedFrameCount() {
+        return droppedFrames;
+    }
+
+    /**
+     * @return number of times the capture waited for a free frame
+     */
+    public long getProducerWaitCount() {
+        return producerWaits;
+    }
+
+    /**
+     * @return number of frames waiting for the detections
+     */
+    public int getQueuedFrameCount() {
+        FrameRingBuffer q = queue;
+        return q == null ? 0 : q.size();
+    }
+
+    /**
+     * @return highest number of frames waiting for the detections
+     */
+    public int getMaxQueuedFrameCount() {
+        return maxQueuedFrames;
+    }
+
+    /**
+     * @return number of frames checked by the detection apis
+     */
+    public long getDispatchedFrameCount() {
+        return dispatchedFrames;
+    }
+
+    /**
+     * @return average time in ns a frame waited in the queue
+     */
+    public long getAverageQueueLatency() {
+        long n = dispatchedFrames;
+        return n == 0 ? 0 : totalQueueLatency / n;
+    }
+
+    /**
+     * @return longest time in ns a frame waited in the queue
+     */
+    public long getMaxQueueLatency() {
+        return maxQueueLatency;
+    }
+
+    /**
+     * @return average time in ns of the detections of a frame
+     */
+    public long getAverageDetectionLatency() {
+        long n = dispatchedFrames;
+        return n == 0 ? 0 : totalDetectionLatency / n;
+    }
+
+    /**
+     * @return longest time in ns of the detections of a frame
+     */
+    public long getMaxDetectionLatency() {
+        return maxDetectionLatency;
+    }
+
+    /**
+     * @return number of frames whose results came more than a frame
+     *         duration after their last sample was read
+     */
+    public long getLateFrameCount() {
+        return lateFrames;
+    }
+
+    @Override
+    public String toString() {
+        return "captured: " + capturedFrames + ", dropped: " + droppedFrames
+                + ", producer waits: " + producerWaits + ", max queued: "
+                + maxQueuedFrames + "/" + queueCapacity + ", dispatched: "
+                + dispatchedFrames + ", queue latency: "
+                + getAverageQueueLatency() / 1000 + "/"
+                + maxQueueLatency / 1000 + " us (avg/max), detection latency: "
+                + getAverageDetectionLatency() / 1000 + "/"
+                + maxDetectionLatency / 1000 + " us (avg/max), late: "
+                + lateFrames + ", frame: " + frameDuration / 1000 + " us";
+    }
+}
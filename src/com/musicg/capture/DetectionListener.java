@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2011 Jacquet Wong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.musicg.capture;
+
+import com.musicg.api.DetectionApi;
+
+/**
+ * Receives the results of the detections of a {@link CapturePipeline}, on
+ * its dispatch thread
+ *
+ * @author Jacquet Wong
+ */
+public interface DetectionListener {
+
+    /**
+     * Called for every frame checked by a detection api
+     *
+     * @param detectionApi
+     *            the detection api
+     * @param frameNumber
+     *            number of the frame since the capture started
+     * @param detected
+     *            true if the frame contains the sound of the api
+     */
+    void onDetection(DetectionApi detectionApi, long frameNumber,
+            boolean detected);
+}
@@ -0,0 +1,397 @@
+/*
+ * Copyright (C) 2011 Jacquet Wong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.musicg.capture;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Lock free ring buffer of frames of amplitudes, handing audio from producer
+ * threads (a capture, a network stream) to consumer threads (detections,
+ * fingerprinting).
+ *
+ * The frames are preallocated short arrays written and read in place, so
+ * nothing is allocated or copied by the buffer. Frames are addressed by
+ * sequence numbers and are claimed, published, taken and released in
+ * batches:
+ *
+ * <pre>
+ * long sequence = ringBuffer.claim(n);       // producer
+ * ... fill ringBuffer.getFrame(sequence + i) ...
+ * ringBuffer.publish(sequence, n);
+ *
+ * long sequence = ringBuffer.next(n);        // consumer
+ * ... read ringBuffer.getFrame(sequence + i) ...
+ * ringBuffer.release(sequence, n);
+ * </pre>
+ *
+ * A buffer for a single producer and a single consumer moves its cursors
+ * with ordered writes only. A buffer for multiple producers and consumers
+ * claims batches with a compare and set, and publishes or releases them in
+ * the order they were claimed.
+ *
+ * @author Jacquet Wong
+ */
+public class FrameRingBuffer {
+
+    private static final long PARK_NANOS = 1000; // 1 us
+    private static final int SPINS = 100; // spins before yielding
+
+    private final short[][] frames;
+    private final long[] timestamps;
+    private final int mask;
+    private final boolean multiple;
+    private final WaitStrategy waitStrategy;
+
+    private final AtomicLong writeClaim = new AtomicLong(); // next to claim
+    private final AtomicLong published = new AtomicLong(); // next to publish
+    private final AtomicLong readClaim = new AtomicLong(); // next to take
+    private final AtomicLong released = new AtomicLong(); // next to release
+    private volatile boolean closed;
+
+    // for WaitStrategy.BLOCK only
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition updated = lock.newCondition();
+    private final AtomicInteger waiters = new AtomicInteger();
+    private final AtomicLong updates = new AtomicLong(); // version
+
+    /**
+     * Constructor
+     *
+     * @param capacity
+     *            number of frames, rounded up to a power of 2
+     * @param frameSize
+     *            number of amplitudes of a frame
+     * @param multiple
+     *            true if several threads produce or consume, false for a
+     *            single producer and a single consumer
+     * @param waitStrategy
+     *            how the threads wait for free or published frames
+     */
+    public FrameRingBuffer(int capacity, int frameSize, boolean multiple,
+            WaitStrategy waitStrategy) {
+        if (capacity < 1 || capacity > 1 << 30 || frameSize < 0) {
+            throw new IllegalArgumentException("Invalid capacity " + capacity
+                    + " or frame size " + frameSize);
+        }
+        int size = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.frames = new short[size][frameSize];
+        this.timestamps = new long[size];
+        this.mask = size - 1;
+        this.multiple = multiple;
+        this.waitStrategy = waitStrategy;
+    }
+
+    /**
+     * Claim free frames to write, waiting for them if needed
+     *
+     * @param n
+     *            number of frames, at most the capacity
+     * @return sequence of the first frame, -1 if the buffer is closed
+     */
+    public long claim(int n) {
+        checkBatch(n);
+        // frames are only claimed once they are free, a claim is never
+        // given up
+        for (int round = 0;; round++) {
+            long version = updates.get();
+            if (closed) {
+                return -1;
+            }
+            long sequence = tryClaimSequence(writeClaim, released, n,
+                    -frames.length);
+            if (sequence >= 0) {
+                return sequence;
+            }
+            pause(version, round);
+        }
+    }
+
+    /**
+     * Claim free frames to write if there are enough of them
+     *
+     * @param n
+     *            number of frames, at most the capacity
+     * @return sequence of the first frame, -1 if there are not n free frames
+     *         or the buffer is closed
+     */
+    public long tryClaim(int n) {
+        checkBatch(n);
+        if (closed) {
+            return -1;
+        }
+        return tryClaimSequence(writeClaim, released, n, -frames.length);
+    }
+
+    /**
+     * Make claimed frames available to the consumers. With multiple
+     * producers, waits for the frames claimed before to be published.
+     *
+     * @param sequence
+     *            sequence of the first frame, returned by claim
+     * @param n
+     *            number of frames
+     */
+    public void publish(long sequence, int n) {
+        commit(published, sequence, n);
+    }
+
+    /**
+     * Take published frames to read, waiting for them if needed. Once the
+     * buffer is closed, less than n frames left can be taken by smaller
+     * batches, see {@link #available()}.
+     *
+     * @param n
+     *            number of frames, at most the capacity
+     * @return sequence of the first frame, -1 if the buffer is closed and
+     *         there are not n frames left once all the frames claimed are
+     *         published
+     */
+    public long next(int n) {
+        checkBatch(n);
+        for (int round = 0;; round++) {
+            long version = updates.get();
+            // closed, and the frames claimed are all published
+            boolean drained = closed && published.get() == writeClaim.get();
+            long sequence = tryClaimSequence(readClaim, published, n, 0);
+            if (sequence >= 0) {
+                return sequence;
+            }
+            if (drained) {
+                return -1;
+            }
+            pause(version, round);
+        }
+    }
+
+    /**
+     * Take published frames to read if there are enough of them
+     *
+     * @param n
+     *            number of frames, at most the capacity
+     * @return sequence of the first frame, -1 if there are not n published
+     *         frames
+     */
+    public long tryNext(int n) {
+        checkBatch(n);
+        return tryClaimSequence(readClaim, published, n, 0);
+    }
+
+    /**
+     * Give frames taken back to the producers. With multiple consumers,
+     * waits for the frames taken before to be released.
+     *
+     * @param sequence
+     *            sequence of the first frame, returned by next
+     * @param n
+     *            number of frames
+     */
+    public void release(long sequence, int n) {
+        commit(released, sequence, n);
+    }
+
+    /**
+     * @param sequence
+     *            sequence of a frame claimed or taken
+     * @return the amplitudes of the frame
+     */
+    public short[] getFrame(long sequence) {
+        return frames[(int) sequence & mask];
+    }
+
+    /**
+     * Set the timestamp of a claimed frame, published with it
+     *
+     * @param sequence
+     *            sequence of a frame claimed
+     * @param timestamp
+     *            the timestamp, e.g. System.nanoTime when it was captured
+     */
+    public void setTimestamp(long sequence, long timestamp) {
+        timestamps[(int) sequence & mask] = timestamp;
+    }
+
+    /**
+     * @param sequence
+     *            sequence of a frame taken
+     * @return the timestamp of the frame
+     */
+    public long getTimestamp(long sequence) {
+        return timestamps[(int) sequence & mask];
+    }
+
+    /**
+     * Close the buffer, once the producers stopped claiming: frames cannot
+     * be claimed anymore and the waiting producers return. The frames
+     * claimed before are still published and taken, the consumers return
+     * once they are all taken.
+     */
+    public void close() {
+        closed = true;
+        signal();
+    }
+
+    /**
+     * @return true once the buffer is closed
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * @return number of frames published and not taken yet
+     */
+    public int available() {
+        return (int) Math.max(published.get() - readClaim.get(), 0);
+    }
+
+    /**
+     * @return number of frames published and not released yet
+     */
+    public int size() {
+        return (int) (published.get() - released.get());
+    }
+
+    /**
+     * @return number of frames
+     */
+    public int getCapacity() {
+        return frames.length;
+    }
+
+    /**
+     * @return number of amplitudes of a frame
+     */
+    public int getFrameSize() {
+        return frames[0].length;
+    }
+
+    /**
+     * @return true if several threads may produce or consume
+     */
+    public boolean isMultiple() {
+        return multiple;
+    }
+
+    /**
+     * @return how the threads wait
+     */
+    public WaitStrategy getWaitStrategy() {
+        return waitStrategy;
+    }
+
+    private void checkBatch(int n) {
+        if (n < 1 || n > frames.length) {
+            throw new IllegalArgumentException("Invalid batch of " + n
+                    + " frames for a capacity of " + frames.length);
+        }
+    }
+
+    // claim n sequences if the limit has reached the end of them plus the
+    // offset, a single thread owns the cursor unless multiple
+    private long tryClaimSequence(AtomicLong cursor, AtomicLong limit, int n,
+            int offset) {
+        while (true) {
+            long sequence = cursor.get();
+            if (limit.get() < sequence + n + offset) {
+                return -1;
+            }
+            if (!multiple) {
+                cursor.lazySet(sequence + n);
+                return sequence;
+            }
+            if (cursor.compareAndSet(sequence, sequence + n)) {
+                return sequence;
+            }
+        }
+    }
+
+    // move a cursor past n frames, in the order of the claims. Every claim
+    // is committed, so the frames claimed before are committed even once
+    // the buffer is closed.
+    private void commit(AtomicLong cursor, long sequence, int n) {
+        if (multiple) {
+            for (int round = 0;; round++) {
+                // the version is read before the cursor, so a commit in
+                // between is not missed
+                long version = updates.get();
+                if (cursor.get() >= sequence) {
+                    break;
+                }
+                pause(version, round);
+            }
+        }
+        cursor.lazySet(sequence + n);
+        signal();
+    }
+
+    // wait a little, or until the buffer is updated after the version of
+    // its updates
+    private void pause(long version, int round) {
+        switch (waitStrategy) {
+        case SPIN:
+            // the thread to wait for may need this processor
+            if (round >= SPINS) {
+                Thread.yield();
+            }
+            break;
+        case PARK:
+            LockSupport.parkNanos(PARK_NANOS);
+            break;
+        default:
+            // the waiter is counted before checking the version and the
+            // updater checks the count after changing the version, so one
+            // of them sees the other
+            lock.lock();
+            waiters.incrementAndGet();
+            try {
+                while (updates.get() == version) {
+                    updated.awaitUninterruptibly();
+                }
+            } finally {
+                waiters.decrementAndGet();
+                lock.unlock();
+            }
+        }
+    }
+
+    private void signal() {
+        if (waitStrategy == WaitStrategy.BLOCK) {
+            updates.incrementAndGet();
+            if (waiters.get() > 0) {
+                lock.lock();
+                try {
+                    updated.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "capacity: " + frames.length + ", frame size: "
+                + frames[0].length + ", claimed: " + writeClaim.get()
+                + ", published: " + published.get() + ", taken: "
+                + readClaim.get() + ", released: " + released.get()
+                + (closed ? ", closed" : "");
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2011 Jacquet Wong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.musicg.capture;
+
+/**
+ * How a thread waits on a {@link FrameRingBuffer} for free or published
+ * frames
+ *
+ * @author Jacquet Wong
+ */
+public enum WaitStrategy {
+
+    /**
+     * Busy spin, yielding the processor after a while, the lowest latency
+     * but a core is kept busy while waiting
+     */
+    SPIN,
+
+    /**
+     * Park for short periods, a few microseconds of latency for almost no
+     * CPU time
+     */
+    PARK,
+
+    /**
+     * Block on a condition signalled by the other side, no CPU time while
+     * waiting but every update of the buffer signals the waiting threads
+     */
+    BLOCK
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2011 Jacquet Wong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.musicg.dsp;
+
+/**
+ * Spectrum of a frame restricted to a range of frequency units. The
+ * magnitudes are the ones FastFourierTransform gives for the Hamming windowed
+ * frame, rebuilt from the bins k and N/2-k of the DFT of the real frame, so
+ * only the bins behind the range have to be computed.
+ *
+ * @author Jacquet Wong
+ *
+ */
+public abstract class BandDft {
+
+    protected final int fftSampleSize;
+    protected final int fromUnit, toUnit;
+    protected final double[] cosTable, sinTable; // cos and sin of 2*PI*i/N
+    private final double[] windowedBins = new double[4]; // scratch
+
+    /**
+     * Constructor
+     *
+     * @param fftSampleSize
+     *            number of amplitudes in a frame, the value needed to be a
+     *            number to power of 2
+     * @param fromUnit
+     *            first frequency unit
+     * @param toUnit
+     *            last frequency unit, below
+     *            FastFourierTransform.getNumFrequencyUnit(fftSampleSize)
+     */
+    protected BandDft(int fftSampleSize, int fromUnit, int toUnit) {
+        if (fftSampleSize < 4 || Integer.bitCount(fftSampleSize) != 1) {
+            throw new IllegalArgumentException(
+                    "The sample size must be a power of 2");
+        }
+        int numUnits = FastFourierTransform.getNumFrequencyUnit(fftSampleSize);
+        if (fromUnit < 0 || toUnit < fromUnit || toUnit >= numUnits) {
+            throw new IllegalArgumentException("Frequency units " + fromUnit
+                    + ".." + toUnit + " out of range 0.." + (numUnits - 1));
+        }
+
+        this.fftSampleSize = fftSampleSize;
+        this.fromUnit = fromUnit;
+        this.toUnit = toUnit;
+
+        cosTable = new double[fftSampleSize];
+        sinTable = new double[fftSampleSize];
+        for (int i = 0; i < fftSampleSize; i++) {
+            double angle = 2 * Math.PI * i / fftSampleSize;
+            cosTable[i] = Math.cos(angle);
+            sinTable[i] = Math.sin(angle);
+        }
+    }
+
+    /**
+     * Get a bin of the DFT of the Hamming windowed frame
+     *
+     * @param bin
+     *            bin number, from 0 to fftSampleSize/2
+     * @param y
+     *            destination of the real and imaginary parts
+     * @param pos
+     *            position of the real part in y
+     */
+    protected abstract void getWindowedBin(int bin, double[] y, int pos);
+
+    // the bins of a real signal are symmetric, bin -b and N-b are the
+    // conjugates of bin b
+    protected int foldBin(int bin) {
+        bin = (bin + fftSampleSize) % fftSampleSize;
+        return bin > fftSampleSize / 2 ? fftSampleSize - bin : bin;
+    }
+
+    /**
+     * Get the intensities of the frequency units fromUnit..toUnit of the
+     * current frame
+     *
+     * @param mag
+     *            destination of the intensities
+     * @param offset
+     *            position in mag of fromUnit
+     */
+    public void getMagnitudes(double[] mag, int offset) {
+        int halfSize = fftSampleSize / 2;
+        double[] y = windowedBins;
+        for (int k = fromUnit; k <= toUnit; k++) {
+            // Y[k] and conj(Y[N/2-k]) = Y[k+N/2] of the windowed frame
+            getWindowedBin(k, y, 0);
+            getWindowedBin(halfSize - k, y, 2);
+            double yr = y[0], yi = y[1];
+            double cr = y[2], ci = -y[3];
+
+            // even and odd amplitudes, paired as complex numbers
+            double er = (yr + cr) / 2, ei = (yi + ci) / 2;
+            double dr = (yr - cr) / 2, di = (yi - ci) / 2;
+            // O[k] = exp(2*PI*i*k/N) * (Y[k] - Y[k+N/2]) / 2
+            double c = cosTable[k], sn = sinTable[k];
+            double or = dr * c - di * sn;
+            double oi = dr * sn + di * c;
+            // Z[k] = E[k] + i * O[k]
+            double zr = er - oi;
+            double zi = ei + or;
+            mag[offset + k - fromUnit] = Math.sqrt(zr * zr + zi * zi);
+        }
+    }
+
+    /**
+     * Get the intensities of the frequency units fromUnit..toUnit of the
+     * current frame
+     *
+     * @return intensities, mag[frequency_unit - fromUnit]=intensity
+     */
+    public double[] getMagnitudes() {
+        double[] mag = new double[toUnit - fromUnit + 1];
+        getMagnitudes(mag, 0);
+        return mag;
+    }
+
+    /**
+     * @return number of amplitudes in a frame
+     */
+    public int getFftSampleSize() {
+        return fftSampleSize;
+    }
+
+    /**
+     * @return first frequency unit
+     */
+    public int getFromUnit() {
+        return fromUnit;
+    }
+
+    /**
+     * @return last frequency unit
+     */
+    public int getToUnit() {
+        return toUnit;
+    }
+}
@@ -19,13 +19,82 @@ package com.musicg.dsp;
 import com.sun.media.sound.FFT;
 
 /**
- * FFT object, transform amplitudes to frequency intensities
+ * FFT object, transform amplitudes to frequency intensities.
+ * 
+ * By default the N amplitudes are transformed as N/2 complex numbers and the
+ * magnitudes of the first N/4 outputs are returned. With a real transform the
+ * N/2 complex outputs are recombined into the N/2+1 bins of the spectrum of
+ * the N real amplitudes, from 0 to the Nyquist frequency, at the same cost.
  * 
  * @author Jacquet Wong
  * 
  */
 public class FastFourierTransform {
 
+    // double precision copy of single precision signals, one per thread
+    private static final ThreadLocal<double[]> scratch = new ThreadLocal<double[]>();
+
+    private final boolean realTransform;
+
+    /**
+     * Constructor.
+     */
+    public FastFourierTransform() {
+        this(false);
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param realTransform
+     *            true to get the N/2+1 bins of the spectrum of the real
+     *            amplitudes
+     */
+    public FastFourierTransform(boolean realTransform) {
+        this.realTransform = realTransform;
+    }
+
+    /**
+     * @return true if the magnitudes are the bins of a real transform
+     */
+    public boolean isRealTransform() {
+        return realTransform;
+    }
+
+    /**
+     * Number of frequency units returned by this transform for a signal
+     * 
+     * @param sampleSize
+     *            number of amplitudes of the signal
+     * @return number of frequency units
+     */
+    public int getNumMagnitudes(int sampleSize) {
+        return realTransform ? getNumRealFrequencyUnit(sampleSize)
+                : getNumFrequencyUnit(sampleSize);
+    }
+
+    /**
+     * Number of frequency units returned by a real transform for a signal
+     * 
+     * @param sampleSize
+     *            number of amplitudes of the signal
+     * @return number of frequency units, from 0 to the Nyquist frequency
+     */
+    public static int getNumRealFrequencyUnit(int sampleSize) {
+        return sampleSize / 2 + 1;
+    }
+
+    /**
+     * Number of frequency units returned for a signal
+     * 
+     * @param sampleSize
+     *            number of amplitudes of the signal
+     * @return number of frequency units
+     */
+    public static int getNumFrequencyUnit(int sampleSize) {
+        return sampleSize / 4;
+    }
+
     /**
      * Get the frequency intensities
      * 
@@ -34,16 +103,134 @@ public class FastFourierTransform {
      * @return intensities of each frequency unit: mag[frequency_unit]=intensity
      */
     public double[] getMagnitudes(double[] amplitudes) {
+        double[] mag = new double[getNumMagnitudes(amplitudes.length)];
+        getMagnitudes(amplitudes, mag, 0);
+        return mag;
+    }
+
+    /**
+     * Get the frequency intensities into a given array, e.g. a row of a
+     * row-major spectrogram. The amplitudes are transformed in place.
+     * 
+     * @param amplitudes
+     *            amplitudes of the signal
+     * @param mag
+     *            destination of the intensities
+     * @param offset
+     *            position in mag of the first frequency unit
+     */
+    public void getMagnitudes(double[] amplitudes, double[] mag, int offset) {
+
+        int indexSize = transform(amplitudes);
+
+        if (realTransform) {
+            double[] twiddles = FftPlanCache.getRealTwiddles(amplitudes.length);
+            int numUnits = getNumRealFrequencyUnit(amplitudes.length);
+            for (int k = 0; k < numUnits; k++) {
+                mag[offset + k] = getRealMagnitude(amplitudes, twiddles, k);
+            }
+            return;
+        }
+
+        double[] complexNumbers = amplitudes;
+        for (int i = 0; i < indexSize; i += 2) {
+            mag[offset + i / 2] = Math.sqrt(complexNumbers[i]
+                    * complexNumbers[i] + complexNumbers[i + 1]
+                    * complexNumbers[i + 1]);
+        }
+    }
+
+    /**
+     * Get the frequency intensities in single precision into a given array.
+     * The amplitudes are transformed in place.
+     * 
+     * @param amplitudes
+     *            amplitudes of the signal
+     * @param mag
+     *            destination of the intensities
+     * @param offset
+     *            position in mag of the first frequency unit
+     */
+    public void getMagnitudes(double[] amplitudes, float[] mag, int offset) {
+
+        int indexSize = transform(amplitudes);
+
+        if (realTransform) {
+            double[] twiddles = FftPlanCache.getRealTwiddles(amplitudes.length);
+            int numUnits = getNumRealFrequencyUnit(amplitudes.length);
+            for (int k = 0; k < numUnits; k++) {
+                mag[offset + k] = (float) getRealMagnitude(amplitudes,
+                        twiddles, k);
+            }
+            return;
+        }
+
+        double[] complexNumbers = amplitudes;
+        for (int i = 0; i < indexSize; i += 2) {
+            mag[offset + i / 2] = (float) Math.sqrt(complexNumbers[i]
+                    * complexNumbers[i] + complexNumbers[i + 1]
+                    * complexNumbers[i + 1]);
+        }
+    }
+
+    /**
+     * Get the frequency intensities of a single precision signal. The
+     * transform itself runs in double precision on a per-thread scratch copy,
+     * only the input and the returned magnitudes are stored as floats.
+     * 
+     * @param amplitudes
+     *            amplitudes of the signal
+     * @return intensities of each frequency unit: mag[frequency_unit]=intensity
+     */
+    public float[] getMagnitudes(float[] amplitudes) {
+
+        int sampleSize = amplitudes.length;
+        double[] complexNumbers = scratch.get();
+        if (complexNumbers == null || complexNumbers.length != sampleSize) {
+            complexNumbers = new double[sampleSize];
+            scratch.set(complexNumbers);
+        }
+        for (int i = 0; i < sampleSize; i++) {
+            complexNumbers[i] = amplitudes[i];
+        }
+
+        float[] mag = new float[getNumMagnitudes(sampleSize)];
+        getMagnitudes(complexNumbers, mag, 0);
+        return mag;
+    }
+
+    // bin k of the real signal from the transformed even (real parts) and odd
+    // (imaginary parts) samples: X[k] = E[k] + W^k O[k], where
+    // E[k] = (Z[k] + conj(Z[N/2-k])) / 2, O[k] = -i (Z[k] - conj(Z[N/2-k])) / 2
+    private static double getRealMagnitude(double[] z, double[] twiddles,
+            int k) {
+        int halfSize = z.length / 2; // number of complex numbers
+        int i = (k % halfSize) * 2;
+        int j = ((halfSize - k) % halfSize) * 2;
+
+        double zr = z[i], zi = z[i + 1];
+        double cr = z[j], ci = -z[j + 1];
+
+        double er = (zr + cr) / 2, ei = (zi + ci) / 2;
+        double or = (zi - ci) / 2, oi = -(zr - cr) / 2;
+
+        double wr = twiddles[2 * k], wi = -twiddles[2 * k + 1];
+        double xr = er + wr * or - wi * oi;
+        double xi = ei + wr * oi + wi * or;
+        return Math.sqrt(xr * xr + xi * xi);
+    }
+
+    // transforms the amplitudes in place, returns the number of doubles
+    // holding the positive frequencies
+    private int transform(double[] amplitudes) {
 
         int sampleSize = amplitudes.length;
 
         // call the fft and transform the complex numbers
-        FFT fft = new FFT(sampleSize / 2, -1);
+        FFT fft = FftPlanCache.getPlan(sampleSize / 2, -1);
         fft.transform(amplitudes);
         // end call the fft and transform the complex numbers
 
-        double[] complexNumbers = amplitudes;
-
         // even indexes (0,2,4,6,...) are real parts
         // odd indexes (1,3,5,7,...) are img parts
         int indexSize = sampleSize / 2;
@@ -52,15 +239,7 @@ public class FastFourierTransform {
         // values represent positive frequency components and the second half
         // represents negative frequency components.
         // we omit the negative ones
-        int positiveSize = indexSize / 2;
-
-        double[] mag = new double[positiveSize];
-        for (int i = 0; i < indexSize; i += 2) {
-            mag[i / 2] = Math.sqrt(complexNumbers[i] * complexNumbers[i]
-                    + complexNumbers[i + 1] * complexNumbers[i + 1]);
-        }
-
-        return mag;
+        return indexSize;
     }
 
 }
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2011 Jacquet Wong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.musicg.dsp;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.sun.media.sound.FFT;
+
+/**
+ * Shared FFT plans. Setting up an FFT computes its twiddle factors and
+ * bit-reversal table, which costs about as much as a transform of a 1024
+ * sample frame. The tables only depend on the frame size and the sign, and an
+ * FFT never modifies them, so one plan per size and sign is shared by all
+ * threads.
+ * 
+ * @author Jacquet Wong
+ */
+public final class FftPlanCache {
+
+    // key is fftFrameSize for inverse transforms, -fftFrameSize for forward
+    private static final ConcurrentMap<Integer, FFT> plans = new ConcurrentHashMap<Integer, FFT>();
+    // key is the number of real samples
+    private static final ConcurrentMap<Integer, double[]> realTwiddles = new ConcurrentHashMap<Integer, double[]>();
+
+    private FftPlanCache() {
+    }
+
+    /**
+     * Get the plan of an FFT, created on the first request
+     * 
+     * @param fftFrameSize
+     *            number of complex numbers, must be a power of 2
+     * @param sign
+     *            -1 for FFT, 1 for inverse FFT
+     * @return the shared FFT
+     */
+    public static FFT getPlan(int fftFrameSize, int sign) {
+        Integer key = sign == -1 ? -fftFrameSize : fftFrameSize;
+        FFT plan = plans.get(key);
+        if (plan == null) {
+            plan = new FFT(fftFrameSize, sign);
+            FFT existingPlan = plans.putIfAbsent(key, plan);
+            if (existingPlan != null) {
+                plan = existingPlan;
+            }
+        }
+        return plan;
+    }
+
+    /**
+     * Get the twiddle factors recombining the half size complex FFT of a
+     * real signal: cos(2*pi*k/N), sin(2*pi*k/N) interleaved for k=0..N/2
+     * 
+     * @param sampleSize
+     *            number of real samples N, must be a power of 2
+     * @return the shared twiddle factors, must not be modified
+     */
+    public static double[] getRealTwiddles(int sampleSize) {
+        double[] twiddles = realTwiddles.get(sampleSize);
+        if (twiddles == null) {
+            int numUnits = sampleSize / 2 + 1;
+            twiddles = new double[numUnits * 2];
+            for (int k = 0; k < numUnits; k++) {
+                double arg = 2 * Math.PI * k / sampleSize;
+                twiddles[2 * k] = Math.cos(arg);
+                twiddles[2 * k + 1] = Math.sin(arg);
+            }
+            double[] existingTwiddles = realTwiddles.putIfAbsent(sampleSize,
+                    twiddles);
+            if (existingTwiddles != null) {
+                twiddles = existingTwiddles;
+            }
+        }
+        return twiddles;
+    }
+
+    /**
+     * @return number of plans in the cache
+     */
+    public static int size() {
+        return plans.size();
+    }
+
+    /**
+     * Drop all the plans, e.g. after a run with unusual frame sizes
+     */
+    public static void clear() {
+        plans.clear();
+        realTwiddles.clear();
+    }
+}
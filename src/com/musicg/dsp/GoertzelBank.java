@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2011 Jacquet Wong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.musicg.dsp;
+
+/**
+ * Goertzel filters evaluating only the bins behind a range of frequency units
+ * of a frame. Each bin costs O(fftSampleSize), cheaper than a whole FFT when
+ * the range is narrow. See {@link BandDft} for the magnitudes.
+ *
+ * @author Jacquet Wong
+ *
+ */
+public class GoertzelBank extends BandDft {
+
+    private final double[] window;
+    private final double[] signal; // windowed frame
+    private final int[] bins; // bins computed, from 0 to N/2
+    private final int[] slots; // slot of a bin in bins, -1 if not computed
+    private final double[] binRe, binIm;
+
+    /**
+     * Constructor
+     *
+     * @param fftSampleSize
+     *            number of amplitudes in a frame, the value needed to be a
+     *            number to power of 2
+     * @param fromUnit
+     *            first frequency unit
+     * @param toUnit
+     *            last frequency unit, below
+     *            FastFourierTransform.getNumFrequencyUnit(fftSampleSize)
+     */
+    public GoertzelBank(int fftSampleSize, int fromUnit, int toUnit) {
+        super(fftSampleSize, fromUnit, toUnit);
+
+        window = WindowFunction.getSharedWindow(WindowType.HAMMING,
+                fftSampleSize);
+        signal = new double[fftSampleSize];
+
+        // unit k needs the windowed bins k and N/2-k
+        int halfSize = fftSampleSize / 2;
+        slots = new int[halfSize + 1];
+        for (int b = 0; b <= halfSize; b++) {
+            slots[b] = -1;
+        }
+        int numBins = 0;
+        for (int k = fromUnit; k <= toUnit; k++) {
+            if (slots[k] < 0) {
+                slots[k] = numBins++;
+            }
+            if (slots[halfSize - k] < 0) {
+                slots[halfSize - k] = numBins++;
+            }
+        }
+        bins = new int[numBins];
+        for (int b = 0; b <= halfSize; b++) {
+            if (slots[b] >= 0) {
+                bins[slots[b]] = b;
+            }
+        }
+        binRe = new double[numBins];
+        binIm = new double[numBins];
+    }
+
+    /**
+     * Compute the bins of a frame, read them with getMagnitudes
+     *
+     * @param amplitudes
+     *            amplitudes holding the frame
+     * @param offset
+     *            position of the first amplitude of the frame
+     */
+    public void transform(short[] amplitudes, int offset) {
+        for (int n = 0; n < fftSampleSize; n++) {
+            signal[n] = amplitudes[offset + n] * window[n];
+        }
+
+        // four filters per pass over the frame, their recurrences run side
+        // by side
+        int s = 0;
+        for (; s + 3 < bins.length; s += 4) {
+            double cA = 2 * cosTable[bins[s]];
+            double cB = 2 * cosTable[bins[s + 1]];
+            double cC = 2 * cosTable[bins[s + 2]];
+            double cD = 2 * cosTable[bins[s + 3]];
+            double a1 = 0, a2 = 0, b1 = 0, b2 = 0;
+            double c1 = 0, c2 = 0, d1 = 0, d2 = 0;
+            for (int n = 0; n < fftSampleSize; n++) {
+                double x = signal[n];
+                double a0 = x + cA * a1 - a2;
+                double b0 = x + cB * b1 - b2;
+                double c0 = x + cC * c1 - c2;
+                double d0 = x + cD * d1 - d2;
+                a2 = a1;
+                a1 = a0;
+                b2 = b1;
+                b1 = b0;
+                c2 = c1;
+                c1 = c0;
+                d2 = d1;
+                d1 = d0;
+            }
+            setBin(s, a1, a2);
+            setBin(s + 1, b1, b2);
+            setBin(s + 2, c1, c2);
+            setBin(s + 3, d1, d2);
+        }
+        for (; s + 1 < bins.length; s += 2) {
+            double cA = 2 * cosTable[bins[s]];
+            double cB = 2 * cosTable[bins[s + 1]];
+            double a1 = 0, a2 = 0, b1 = 0, b2 = 0;
+            for (int n = 0; n < fftSampleSize; n++) {
+                double x = signal[n];
+                double a0 = x + cA * a1 - a2;
+                double b0 = x + cB * b1 - b2;
+                a2 = a1;
+                a1 = a0;
+                b2 = b1;
+                b1 = b0;
+            }
+            setBin(s, a1, a2);
+            setBin(s + 1, b1, b2);
+        }
+        if (s < bins.length) {
+            double coeff = 2 * cosTable[bins[s]];
+            double s1 = 0, s2 = 0;
+            for (int n = 0; n < fftSampleSize; n++) {
+                double s0 = signal[n] + coeff * s1 - s2;
+                s2 = s1;
+                s1 = s0;
+            }
+            setBin(s, s1, s2);
+        }
+    }
+
+    // X[b] = exp(2*PI*i*b/N) * s1 - s2
+    private void setBin(int slot, double s1, double s2) {
+        int b = bins[slot];
+        binRe[slot] = cosTable[b] * s1 - s2;
+        binIm[slot] = sinTable[b] * s1;
+    }
+
+    @Override
+    protected void getWindowedBin(int bin, double[] y, int pos) {
+        int s = slots[bin];
+        y[pos] = binRe[s];
+        y[pos + 1] = binIm[s];
+    }
+
+    /**
+     * @return number of DFT bins computed for a frame
+     */
+    public int getNumBins() {
+        return bins.length;
+    }
+}
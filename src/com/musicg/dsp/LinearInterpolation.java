@@ -75,4 +75,50 @@ public class LinearInterpolation {
 
         return interpolatedSamples;
     }
+
+    /**
+     * Do interpolation on single precision samples according to the original
+     * and destinated sample rates
+     * 
+     * @param oldSampleRate
+     *            sample rate of the original samples
+     * @param newSampleRate
+     *            sample rate of the interpolated samples
+     * @param samples
+     *            original samples
+     * @return interpolated samples
+     */
+    public static float[] interpolate(int oldSampleRate, int newSampleRate,
+            float[] samples) {
+
+        if (oldSampleRate == newSampleRate) {
+            return samples;
+        }
+
+        int newLength = Math.round(((float) samples.length
+                / oldSampleRate * newSampleRate));
+        float lengthMultiplier = (float) newLength / samples.length;
+        float[] interpolatedSamples = new float[newLength];
+
+        // interpolate the value by the linear equation y=mx+c
+        for (int i = 0; i < newLength; i++) {
+
+            // get the nearest positions for the interpolated point
+            float currentPosition = i / lengthMultiplier;
+            int nearestLeftPosition = (int) currentPosition;
+            int nearestRightPosition = nearestLeftPosition + 1;
+            if (nearestRightPosition >= samples.length) {
+                nearestRightPosition = samples.length - 1;
+            }
+
+            float slope = samples[nearestRightPosition]
+                    - samples[nearestLeftPosition]; // delta x is 1
+            float positionFromLeft = currentPosition - nearestLeftPosition;
+
+            interpolatedSamples[i] = slope * positionFromLeft
+                    + samples[nearestLeftPosition]; // y=mx+c
+        }
+
+        return interpolatedSamples;
+    }
 }
@@ -0,0 +1,444 @@
+/*
+ * Copyright (C) 2011 Jacquet Wong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.musicg.dsp;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Resample a stream by a rational ratio targetRate/sourceRate = L/M with a
+ * polyphase FIR filter. The low-pass filter removes the frequencies above
+ * the lower of the two Nyquist frequencies before they fold back into the
+ * resampled signal.
+ *
+ * The filter is split into L phases, one per fractional position of an
+ * output sample between two input samples. The banks are computed once per
+ * ratio and shared by all the resamplers, e.g. 44100 to 10240 Hz has 512
+ * phases of 138 taps.
+ *
+ * A resampler keeps the last input samples in a ring, blocks of any length
+ * can be pushed without allocating. Output sample j is centred on input
+ * position j*M/L, the same positions as {@link LinearInterpolation}.
+ *
+ * @author Jacquet Wong
+ *
+ */
+public class PolyphaseResampler {
+
+    /**
+     * Largest number of phases of a filter bank; the ratio
+     * targetRate/sourceRate reduced to L/M must have L below it
+     */
+    public static final int MAX_NUM_PHASES = 4096;
+
+    // zero crossings of the windowed sinc on each side, at the lower rate
+    private static final int ZERO_CROSSINGS = 16;
+    // cutoff frequency relative to the lower Nyquist frequency
+    private static final double ROLLOFF = 0.9;
+
+    private static final ConcurrentMap<Long, FilterBank> banks =
+            new ConcurrentHashMap<Long, FilterBank>();
+
+    private final int sourceRate, targetRate;
+    private final FilterBank bank;
+    private final double[] ring; // last samples, stored twice
+    private final int ringMask;
+    private long numInputs; // number of input samples pushed
+    private long center; // input sample before the next output sample
+    private int phase; // fractional position of the next output, in 1/L
+
+    /**
+     * Constructor
+     *
+     * @param sourceRate
+     *            sample rate of the input
+     * @param targetRate
+     *            sample rate of the output
+     */
+    public PolyphaseResampler(int sourceRate, int targetRate) {
+        if (!isSupported(sourceRate, targetRate)) {
+            throw new IllegalArgumentException("Cannot resample "
+                    + sourceRate + " Hz to " + targetRate + " Hz with at most "
+                    + MAX_NUM_PHASES + " phases");
+        }
+        this.sourceRate = sourceRate;
+        this.targetRate = targetRate;
+        this.bank = getFilterBank(sourceRate, targetRate);
+
+        int ringSize = Integer.highestOneBit(Math.max(bank.numTaps, 1) * 2 - 1);
+        ring = new double[ringSize * 2];
+        ringMask = ringSize - 1;
+    }
+
+    /**
+     * Whether a polyphase bank can be built for the ratio of two sample
+     * rates
+     *
+     * @param sourceRate
+     *            sample rate of the input
+     * @param targetRate
+     *            sample rate of the output
+     * @return true if the reduced ratio has at most MAX_NUM_PHASES phases
+     */
+    public static boolean isSupported(int sourceRate, int targetRate) {
+        if (sourceRate <= 0 || targetRate <= 0) {
+            return false;
+        }
+        return targetRate / gcd(sourceRate, targetRate) <= MAX_NUM_PHASES;
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+    private static FilterBank getFilterBank(int sourceRate, int targetRate) {
+        int divisor = gcd(sourceRate, targetRate);
+        int upFactor = targetRate / divisor;
+        int downFactor = sourceRate / divisor;
+        Long key = ((long) upFactor << 32) | downFactor;
+
+        FilterBank bank = banks.get(key);
+        if (bank == null) {
+            bank = new FilterBank(upFactor, downFactor);
+            FilterBank existing = banks.putIfAbsent(key, bank);
+            if (existing != null) {
+                bank = existing;
+            }
+        }
+        return bank;
+    }
+
+    /**
+     * Maximum number of output samples produced by a block of input samples
+     *
+     * @param numInputs
+     *            number of input samples of the block
+     * @return size the output of process needs
+     */
+    public int getMaxOutputLength(int numInputs) {
+        long upsampled = (long) numInputs * bank.upFactor;
+        return (int) ((upsampled + bank.downFactor - 1) / bank.downFactor) + 1;
+    }
+
+    /**
+     * Push a block of samples and get the output samples which can be
+     * computed from them. The output lags the input by half the filter
+     * length, see flush.
+     *
+     * @param input
+     *            input samples
+     * @param offset
+     *            position of the first input sample
+     * @param length
+     *            number of input samples
+     * @param output
+     *            destination of the output samples, at least
+     *            getMaxOutputLength(length) long after outputOffset
+     * @param outputOffset
+     *            position of the first output sample
+     * @return number of output samples written
+     */
+    public int process(short[] input, int offset, int length, short[] output,
+            int outputOffset) {
+        int j = outputOffset;
+        for (int i = offset; i < offset + length; i++) {
+            push(input[i]);
+            while (hasOutput()) {
+                output[j++] = toShort(nextOutput());
+            }
+        }
+        return j - outputOffset;
+    }
+
+    /**
+     * Push a block of samples and get the output samples which can be
+     * computed from them, in single precision without rounding or clipping
+     *
+     * @param input
+     *            input samples
+     * @param offset
+     *            position of the first input sample
+     * @param length
+     *            number of input samples
+     * @param output
+     *            destination of the output samples, at least
+     *            getMaxOutputLength(length) long after outputOffset
+     * @param outputOffset
+     *            position of the first output sample
+     * @return number of output samples written
+     */
+    public int process(float[] input, int offset, int length, float[] output,
+            int outputOffset) {
+        int j = outputOffset;
+        for (int i = offset; i < offset + length; i++) {
+            push(input[i]);
+            while (hasOutput()) {
+                output[j++] = (float) nextOutput();
+            }
+        }
+        return j - outputOffset;
+    }
+
+    /**
+     * Get the output samples still waiting for input samples, as if the
+     * input ended with silence. Call reset before pushing a new stream.
+     *
+     * @param output
+     *            destination of the output samples, at least
+     *            getMaxOutputLength(getHalfLength()) long after outputOffset
+     * @param outputOffset
+     *            position of the first output sample
+     * @return number of output samples written
+     */
+    public int flush(short[] output, int outputOffset) {
+        long endOfInput = numInputs;
+        int j = outputOffset;
+        while (center < endOfInput) {
+            push(0);
+            while (hasOutput() && center < endOfInput) {
+                output[j++] = toShort(nextOutput());
+            }
+        }
+        return j - outputOffset;
+    }
+
+    /**
+     * Get the output samples still waiting for input samples in single
+     * precision, as if the input ended with silence. Call reset before
+     * pushing a new stream.
+     *
+     * @param output
+     *            destination of the output samples, at least
+     *            getMaxOutputLength(getHalfLength()) long after outputOffset
+     * @param outputOffset
+     *            position of the first output sample
+     * @return number of output samples written
+     */
+    public int flush(float[] output, int outputOffset) {
+        long endOfInput = numInputs;
+        int j = outputOffset;
+        while (center < endOfInput) {
+            push(0);
+            while (hasOutput() && center < endOfInput) {
+                output[j++] = (float) nextOutput();
+            }
+        }
+        return j - outputOffset;
+    }
+
+    /**
+     * Resample a whole signal, the output has as many samples as the one of
+     * {@link LinearInterpolation}
+     *
+     * @param samples
+     *            samples at the source rate
+     * @return samples at the target rate
+     */
+    public short[] resample(short[] samples) {
+        if (sourceRate == targetRate) {
+            return samples;
+        }
+
+        reset();
+        int newLength = Math.round(((float) samples.length / sourceRate
+                * targetRate));
+        short[] resampled = new short[getMaxOutputLength(samples.length)
+                + getMaxOutputLength(bank.halfTaps)];
+        int numOutputs = process(samples, 0, samples.length, resampled, 0);
+        numOutputs += flush(resampled, numOutputs);
+        reset();
+
+        short[] result = new short[newLength];
+        System.arraycopy(resampled, 0, result, 0, Math.min(newLength,
+                numOutputs));
+        return result;
+    }
+
+    /**
+     * Resample a whole signal in single precision, the output has as many
+     * samples as the one of {@link LinearInterpolation}
+     *
+     * @param samples
+     *            samples at the source rate
+     * @return samples at the target rate
+     */
+    public float[] resample(float[] samples) {
+        if (sourceRate == targetRate) {
+            return samples;
+        }
+
+        reset();
+        int newLength = Math.round(((float) samples.length / sourceRate
+                * targetRate));
+        float[] resampled = new float[getMaxOutputLength(samples.length)
+                + getMaxOutputLength(bank.halfTaps)];
+        int numOutputs = process(samples, 0, samples.length, resampled, 0);
+        numOutputs += flush(resampled, numOutputs);
+        reset();
+
+        float[] result = new float[newLength];
+        System.arraycopy(resampled, 0, result, 0, Math.min(newLength,
+                numOutputs));
+        return result;
+    }
+
+    /**
+     * Forget the samples pushed so far
+     */
+    public void reset() {
+        for (int i = 0; i < ring.length; i++) {
+            ring[i] = 0;
+        }
+        numInputs = 0;
+        center = 0;
+        phase = 0;
+    }
+
+    private void push(double sample) {
+        int i = (int) (numInputs & ringMask);
+        ring[i] = sample;
+        ring[i + ringMask + 1] = sample;
+        numInputs++;
+    }
+
+    // whether the last tap of the next output sample has been pushed
+    private boolean hasOutput() {
+        return center + bank.halfTaps < numInputs;
+    }
+
+    private double nextOutput() {
+        // taps from center-halfTaps+1 to center+halfTaps
+        int numTaps = bank.numTaps;
+        double[] coefficients = bank.coefficients;
+        int start = (int) ((center - bank.halfTaps + 1) & ringMask);
+        int base = phase * numTaps;
+        double sum = 0;
+        for (int t = 0; t < numTaps; t++) {
+            sum += coefficients[base + t] * ring[start + t];
+        }
+
+        phase += bank.downFactor;
+        center += phase / bank.upFactor;
+        phase %= bank.upFactor;
+        return sum;
+    }
+
+    private static short toShort(double value) {
+        long rounded = Math.round(value);
+        if (rounded > Short.MAX_VALUE) {
+            return Short.MAX_VALUE;
+        }
+        if (rounded < Short.MIN_VALUE) {
+            return Short.MIN_VALUE;
+        }
+        return (short) rounded;
+    }
+
+    /**
+     * @return sample rate of the input
+     */
+    public int getSourceRate() {
+        return sourceRate;
+    }
+
+    /**
+     * @return sample rate of the output
+     */
+    public int getTargetRate() {
+        return targetRate;
+    }
+
+    /**
+     * @return number of input samples an output sample waits for
+     */
+    public int getHalfLength() {
+        return bank.halfTaps;
+    }
+
+    /**
+     * @return number of phases of the filter bank
+     */
+    public int getNumPhases() {
+        return bank.upFactor;
+    }
+
+    /**
+     * @return number of taps of a phase
+     */
+    public int getNumTaps() {
+        return bank.numTaps;
+    }
+
+    // windowed sinc low-pass filter split into upFactor phases
+    private static class FilterBank {
+
+        final int upFactor, downFactor;
+        final int halfTaps, numTaps;
+        final double[] coefficients; // coefficients[phase * numTaps + tap]
+
+        FilterBank(int upFactor, int downFactor) {
+            this.upFactor = upFactor;
+            this.downFactor = downFactor;
+
+            // cutoff relative to the input Nyquist frequency
+            double cutoff = ROLLOFF * Math.min(1.0, (double) upFactor
+                    / downFactor);
+            halfTaps = (int) Math.ceil(ZERO_CROSSINGS
+                    * Math.max(1.0, (double) downFactor / upFactor));
+            numTaps = halfTaps * 2;
+            coefficients = new double[upFactor * numTaps];
+
+            for (int p = 0; p < upFactor; p++) {
+                double fraction = (double) p / upFactor;
+                double sum = 0;
+                for (int t = 0; t < numTaps; t++) {
+                    // distance from the output position to the tap
+                    double x = fraction + halfTaps - 1 - t;
+                    double c = cutoff * sinc(cutoff * x)
+                            * blackman(x / halfTaps);
+                    coefficients[p * numTaps + t] = c;
+                    sum += c;
+                }
+                // unit gain at 0 Hz for every phase
+                for (int t = 0; t < numTaps; t++) {
+                    coefficients[p * numTaps + t] /= sum;
+                }
+            }
+        }
+
+        private static double sinc(double x) {
+            if (x == 0) {
+                return 1;
+            }
+            return Math.sin(Math.PI * x) / (Math.PI * x);
+        }
+
+        // Blackman window over -1..1
+        private static double blackman(double x) {
+            if (x <= -1 || x >= 1) {
+                return 0;
+            }
+            return 0.42 + 0.5 * Math.cos(Math.PI * x) + 0.08
+                    * Math.cos(2 * Math.PI * x);
+        }
+    }
+}
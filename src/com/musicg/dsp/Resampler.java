@@ -24,10 +24,33 @@ package com.musicg.dsp;
  */
 public class Resampler {
 
+    private final boolean antiAliasing;
+
     /**
-     * Constructor.
+     * Constructor, resamples by linear interpolation.
      */
     public Resampler() {
+        this(false);
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param antiAliasing
+     *            true to resample with a {@link PolyphaseResampler}, which
+     *            filters out the frequencies above the lower Nyquist frequency,
+     *            false for the linear interpolation
+     */
+    public Resampler(boolean antiAliasing) {
+        this.antiAliasing = antiAliasing;
+    }
+
+    /**
+     * @return true if the resampling filters out the frequencies above the
+     *         lower Nyquist frequency
+     */
+    public boolean isAntiAliasing() {
+        return antiAliasing;
     }
 
     /**
@@ -65,18 +88,9 @@ public class Resampler {
         }
         // end make the amplitudes
 
-        // do interpolation
-        LinearInterpolation reSample = new LinearInterpolation();
-        short[] targetSample = reSample.interpolate(sourceRate, targetRate,
-                amplitudes);
+        // resample the amplitudes
+        short[] targetSample = reSample(amplitudes, sourceRate, targetRate);
         int targetLength = targetSample.length;
-        // end do interpolation
-
-        // TODO: Remove the high frequency signals with a digital filter,
-        // leaving a signal containing only half-sample-rated frequency
-        // information, but still sampled at a rate of target sample rate.
-        // Usually FIR is used
-
         // end resample the amplitudes
 
         // convert the amplitude to bytes
@@ -99,4 +113,48 @@ public class Resampler {
 
         return bytes;
     }
+
+    /**
+     * Do resampling on amplitudes already decoded
+     * 
+     * @param amplitudes
+     *            amplitudes at the source rate
+     * @param sourceRate
+     *            Sample rate of the source amplitudes
+     * @param targetRate
+     *            Sample rate of the target amplitudes
+     * @return re-sampled amplitudes, the source ones if the rates are the
+     *         same
+     */
+    public short[] reSample(short[] amplitudes, int sourceRate, int targetRate) {
+        if (antiAliasing
+                && PolyphaseResampler.isSupported(sourceRate, targetRate)) {
+            // low-pass FIR filter and resampling in one pass
+            return new PolyphaseResampler(sourceRate, targetRate)
+                    .resample(amplitudes);
+        }
+        return LinearInterpolation.interpolate(sourceRate, targetRate,
+                amplitudes);
+    }
+
+    /**
+     * Do resampling on single precision samples
+     * 
+     * @param samples
+     *            samples at the source rate
+     * @param sourceRate
+     *            Sample rate of the source samples
+     * @param targetRate
+     *            Sample rate of the target samples
+     * @return re-sampled samples, the source ones if the rates are the same
+     */
+    public float[] reSample(float[] samples, int sourceRate, int targetRate) {
+        if (antiAliasing
+                && PolyphaseResampler.isSupported(sourceRate, targetRate)) {
+            return new PolyphaseResampler(sourceRate, targetRate)
+                    .resample(samples);
+        }
+        return LinearInterpolation.interpolate(sourceRate, targetRate,
+                samples);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2011 Jacquet Wong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.musicg.dsp;
+
+/**
+ * Sliding DFT over the last fftSampleSize amplitudes of a stream. Only the
+ * bins needed by a range of frequency units are kept, every new amplitude
+ * updates them in O(number of bins).
+ *
+ * The Hamming window is applied on the bins, see {@link BandDft} for the
+ * magnitudes. The bins are computed again from the amplitudes once per frame
+ * so the rounding errors of the updates do not pile up.
+ *
+ * @author Jacquet Wong
+ *
+ */
+public class SlidingDft extends BandDft {
+
+    // coefficients of the Hamming window of WindowFunction:
+    // w[n] = A - B * cos(2 * PI * n / N)
+    private static final double HAMMING_A = 0.54f;
+    private static final double HAMMING_B = 0.46f;
+
+    private final double[] history; // last fftSampleSize amplitudes, circular
+    private final int[] bins; // bins kept, from 0 to N/2
+    private final int[] slots; // slot of a bin in bins, -1 if not kept
+    private final double[] binRe, binIm; // DFT of the history, oldest first
+    private final double[] bin = new double[2]; // scratch complex number
+    private int head; // position of the oldest amplitude in history
+    private long numAmplitudes; // number of amplitudes added
+    private int sinceResync; // amplitudes added since the last resync
+
+    /**
+     * Constructor
+     *
+     * @param fftSampleSize
+     *            number of amplitudes in a frame, the value needed to be a
+     *            number to power of 2
+     * @param fromUnit
+     *            first frequency unit
+     * @param toUnit
+     *            last frequency unit, below
+     *            FastFourierTransform.getNumFrequencyUnit(fftSampleSize)
+     */
+    public SlidingDft(int fftSampleSize, int fromUnit, int toUnit) {
+        super(fftSampleSize, fromUnit, toUnit);
+        this.history = new double[fftSampleSize];
+
+        // unit k needs the windowed bins k and N/2-k, the window needs their
+        // neighbours
+        int halfSize = fftSampleSize / 2;
+        slots = new int[halfSize + 1];
+        for (int b = 0; b <= halfSize; b++) {
+            slots[b] = -1;
+        }
+        int numBins = 0;
+        for (int k = fromUnit; k <= toUnit; k++) {
+            for (int d = -1; d <= 1; d++) {
+                numBins += keep(foldBin(k + d), numBins);
+                numBins += keep(foldBin(halfSize - k + d), numBins);
+            }
+        }
+        bins = new int[numBins];
+        for (int b = 0; b <= halfSize; b++) {
+            if (slots[b] >= 0) {
+                bins[slots[b]] = b;
+            }
+        }
+        binRe = new double[numBins];
+        binIm = new double[numBins];
+    }
+
+    private int keep(int bin, int slot) {
+        if (slots[bin] >= 0) {
+            return 0;
+        }
+        slots[bin] = slot;
+        return 1;
+    }
+
+    /**
+     * Add an amplitude, the oldest one leaves the frame
+     *
+     * @param amplitude
+     *            new amplitude
+     */
+    public void add(double amplitude) {
+        double delta = amplitude - history[head];
+        history[head] = amplitude;
+        head = (head + 1) & (fftSampleSize - 1);
+        numAmplitudes++;
+
+        if (++sinceResync >= fftSampleSize) {
+            resync();
+            return;
+        }
+
+        // X[b] = (X[b] - oldest + newest) * exp(2*PI*i*b/N)
+        for (int s = 0; s < bins.length; s++) {
+            int b = bins[s];
+            double re = binRe[s] + delta;
+            double im = binIm[s];
+            double c = cosTable[b], sn = sinTable[b];
+            binRe[s] = re * c - im * sn;
+            binIm[s] = re * sn + im * c;
+        }
+    }
+
+    /**
+     * Add amplitudes
+     *
+     * @param amplitudes
+     *            new amplitudes
+     * @param offset
+     *            position of the first amplitude to add
+     * @param length
+     *            number of amplitudes to add
+     */
+    public void add(short[] amplitudes, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            add(amplitudes[i]);
+        }
+    }
+
+    // DFT of the history from the oldest amplitude
+    private void resync() {
+        int mask = fftSampleSize - 1;
+        for (int s = 0; s < bins.length; s++) {
+            int b = bins[s];
+            double re = 0, im = 0;
+            for (int n = 0; n < fftSampleSize; n++) {
+                double x = history[(head + n) & mask];
+                int i = (b * n) & mask;
+                re += x * cosTable[i];
+                im -= x * sinTable[i];
+            }
+            binRe[s] = re;
+            binIm[s] = im;
+        }
+        sinceResync = 0;
+    }
+
+    // bin of the Hamming windowed frame: A * X[b] - B/2 * (X[b-1] + X[b+1])
+    @Override
+    protected void getWindowedBin(int bin, double[] y, int pos) {
+        double[] x = this.bin;
+        getBin(bin, x);
+        double re = HAMMING_A * x[0], im = HAMMING_A * x[1];
+        getBin(bin - 1, x);
+        re -= HAMMING_B / 2 * x[0];
+        im -= HAMMING_B / 2 * x[1];
+        getBin(bin + 1, x);
+        re -= HAMMING_B / 2 * x[0];
+        im -= HAMMING_B / 2 * x[1];
+        y[pos] = re;
+        y[pos + 1] = im;
+    }
+
+    private void getBin(int bin, double[] x) {
+        bin = (bin + fftSampleSize) % fftSampleSize;
+        boolean conjugate = bin > fftSampleSize / 2;
+        int s = slots[conjugate ? fftSampleSize - bin : bin];
+        x[0] = binRe[s];
+        x[1] = conjugate ? -binIm[s] : binIm[s];
+    }
+
+    /**
+     * Forget the amplitudes added so far
+     */
+    public void reset() {
+        for (int i = 0; i < fftSampleSize; i++) {
+            history[i] = 0;
+        }
+        for (int s = 0; s < bins.length; s++) {
+            binRe[s] = 0;
+            binIm[s] = 0;
+        }
+        head = 0;
+        numAmplitudes = 0;
+        sinceResync = 0;
+    }
+
+    /**
+     * @return true once a whole frame of amplitudes has been added
+     */
+    public boolean isFull() {
+        return numAmplitudes >= fftSampleSize;
+    }
+
+    /**
+     * @return number of amplitudes added since the construction or the last
+     *         reset
+     */
+    public long getNumAmplitudes() {
+        return numAmplitudes;
+    }
+
+    /**
+     * @return number of DFT bins updated by every amplitude
+     */
+    public int getNumBins() {
+        return bins.length;
+    }
+}
@@ -16,9 +16,17 @@
 
 package com.musicg.dsp;
 
+import java.nio.DoubleBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 /**
  * Window functions generator
  * 
+ * A window only depends on its type and size, so each one is computed once
+ * and shared by all threads, read through the views of
+ * {@link #getWindow(WindowType, int)}.
+ *
  * @author Jacquet Wong
  *
  */
@@ -44,8 +52,25 @@ public class WindowFunction {
 	 * 
 	 */
     public static final int BLACKMAN = 4;
+    /**
+	 * 
+	 */
+    public static final int BLACKMAN_HARRIS = 5;
+    /**
+	 * 
+	 */
+    public static final int KAISER = 6;
+
+    /**
+     * Beta of the Kaiser window, side lobes at about -44dB
+     */
+    public static final double DEFAULT_KAISER_BETA = 6.0;
 
-    int windowType = 0; // defaults to rectangular window
+    private static final ConcurrentMap<WindowKey, double[]> windows = new ConcurrentHashMap<WindowKey, double[]>();
+
+    WindowType windowType = WindowType.RECTANGULAR; // defaults to rectangular
+                                                    // window
+    double kaiserBeta = DEFAULT_KAISER_BETA;
 
     /**
      * Constructor.
@@ -53,12 +78,24 @@ public class WindowFunction {
     public WindowFunction() {
     }
 
+    /**
+     * Constructor
+     *
+     * @param windowType
+     *            window type
+     */
+    public WindowFunction(WindowType windowType) {
+        this.windowType = windowType;
+    }
+
     /**
      * @param wt
      *            window type
      */
     public void setWindowType(int wt) {
-        windowType = wt;
+        WindowType[] types = WindowType.values();
+        windowType = wt >= 0 && wt < types.length ? types[wt]
+                : WindowType.RECTANGULAR;
     }
 
     /**
@@ -66,25 +103,49 @@ public class WindowFunction {
      *            window type
      */
     public void setWindowType(String w) {
-        if (w.toUpperCase().equals("RECTANGULAR"))
-            windowType = RECTANGULAR;
-        if (w.toUpperCase().equals("BARTLETT"))
-            windowType = BARTLETT;
-        if (w.toUpperCase().equals("HANNING"))
-            windowType = HANNING;
-        if (w.toUpperCase().equals("HAMMING"))
-            windowType = HAMMING;
-        if (w.toUpperCase().equals("BLACKMAN"))
-            windowType = BLACKMAN;
+        WindowType type = WindowType.forName(w);
+        if (type != null) {
+            windowType = type;
+        }
+    }
+
+    /**
+     * @param windowType
+     *            window type
+     */
+    public void setWindowType(WindowType windowType) {
+        this.windowType = windowType;
     }
 
     /**
      * @return the window type
      */
     public int getWindowType() {
+        return windowType.ordinal();
+    }
+
+    /**
+     * @return the window type
+     */
+    public WindowType getType() {
         return windowType;
     }
 
+    /**
+     * @param kaiserBeta
+     *            beta of the Kaiser window, 0 gives a rectangular window
+     */
+    public void setKaiserBeta(double kaiserBeta) {
+        this.kaiserBeta = kaiserBeta;
+    }
+
+    /**
+     * @return beta of the Kaiser window
+     */
+    public double getKaiserBeta() {
+        return kaiserBeta;
+    }
+
     /**
      * Generate a window
      * 
@@ -93,6 +154,76 @@ public class WindowFunction {
      * @return window in array
      */
     public double[] generate(int nSamples) {
+        return getSharedWindow(windowType, nSamples, kaiserBeta).clone();
+    }
+
+    /**
+     * Get the shared window of this type
+     *
+     * @param nSamples
+     *            size of the window
+     * @return read only view of the shared window
+     */
+    public DoubleBuffer getWindow(int nSamples) {
+        return view(getSharedWindow(windowType, nSamples, kaiserBeta));
+    }
+
+    /**
+     * Get a shared window, computed on the first request
+     *
+     * @param windowType
+     *            window type, a Kaiser window has the default beta
+     * @param nSamples
+     *            size of the window
+     * @return read only view of the shared window
+     */
+    public static DoubleBuffer getWindow(WindowType windowType, int nSamples) {
+        return view(getSharedWindow(windowType, nSamples));
+    }
+
+    // the shared window itself, for the classes of this package that do not
+    // modify it
+    static double[] getSharedWindow(WindowType windowType, int nSamples) {
+        return getSharedWindow(windowType, nSamples, DEFAULT_KAISER_BETA);
+    }
+
+    private static DoubleBuffer view(double[] window) {
+        return DoubleBuffer.wrap(window).asReadOnlyBuffer();
+    }
+
+    private static double[] getSharedWindow(WindowType windowType,
+            int nSamples, double kaiserBeta) {
+        if (windowType != WindowType.KAISER) {
+            kaiserBeta = 0;
+        }
+        WindowKey key = new WindowKey(windowType, nSamples, kaiserBeta);
+        double[] window = windows.get(key);
+        if (window == null) {
+            window = compute(windowType, nSamples, kaiserBeta);
+            double[] existingWindow = windows.putIfAbsent(key, window);
+            if (existingWindow != null) {
+                window = existingWindow;
+            }
+        }
+        return window;
+    }
+
+    /**
+     * @return number of windows in the cache
+     */
+    public static int size() {
+        return windows.size();
+    }
+
+    /**
+     * Drop all the windows, e.g. after a run with unusual sizes
+     */
+    public static void clear() {
+        windows.clear();
+    }
+
+    private static double[] compute(WindowType windowType, int nSamples,
+            double kaiserBeta) {
         // generate nSamples window function values
         // for index values 0 .. nSamples - 1
         int m = nSamples / 2;
@@ -102,7 +233,7 @@ public class WindowFunction {
         switch (windowType) {
         case BARTLETT: // Bartlett (triangular) window
             for (int n = 0; n < nSamples; n++)
-                w[n] = 1.0f - Math.abs(n - m) / m;
+                w[n] = 1.0f - (double) Math.abs(n - m) / m;
             break;
         case HANNING: // Hanning window
             r = pi / (m + 1);
@@ -120,10 +251,70 @@ public class WindowFunction {
                 w[m + n] = 0.42f + 0.5f * Math.cos(n * r) + 0.08f
                         * Math.cos(2 * n * r);
             break;
+        case BLACKMAN_HARRIS: // 4-term Blackman-Harris window
+            r = pi / m;
+            for (int n = -m; n < m; n++)
+                w[m + n] = 0.35875 + 0.48829 * Math.cos(n * r) + 0.14128
+                        * Math.cos(2 * n * r) + 0.01168 * Math.cos(3 * n * r);
+            break;
+        case KAISER: // Kaiser window
+            double i0Beta = besselI0(kaiserBeta);
+            for (int n = -m; n < m; n++) {
+                double x = (double) n / m;
+                w[m + n] = besselI0(kaiserBeta * Math.sqrt(1 - x * x))
+                        / i0Beta;
+            }
+            break;
         default: // Rectangular window function
             for (int n = 0; n < nSamples; n++)
                 w[n] = 1.0f;
         }
         return w;
     }
+
+    // modified Bessel function of the first kind, order 0, by its series
+    private static double besselI0(double x) {
+        double sum = 1;
+        double term = 1;
+        double halfX = x / 2;
+        for (int k = 1; term > sum * 1e-16; k++) {
+            term *= (halfX / k) * (halfX / k);
+            sum += term;
+        }
+        return sum;
+    }
+
+    private static final class WindowKey {
+
+        private final WindowType windowType;
+        private final int nSamples;
+        private final double kaiserBeta;
+
+        WindowKey(WindowType windowType, int nSamples, double kaiserBeta) {
+            this.windowType = windowType;
+            this.nSamples = nSamples;
+            this.kaiserBeta = kaiserBeta;
+        }
+
+        @Override
+        public int hashCode() {
+            long bits = Double.doubleToLongBits(kaiserBeta);
+            int result = windowType.hashCode();
+            result = 31 * result + nSamples;
+            result = 31 * result + (int) (bits ^ (bits >>> 32));
+            return result;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof WindowKey)) {
+                return false;
+            }
+            WindowKey other = (WindowKey) obj;
+            return windowType == other.windowType
+                    && nSamples == other.nSamples
+                    && Double.doubleToLongBits(kaiserBeta) == Double
+                            .doubleToLongBits(other.kaiserBeta);
+        }
+    }
 }
\ No newline at end of file
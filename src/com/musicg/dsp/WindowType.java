@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2011 Jacquet Wong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.musicg.dsp;
+
+/**
+ * Window types of {@link WindowFunction}, in the order of its int constants
+ *
+ * @author Jacquet Wong
+ */
+public enum WindowType {
+
+    /**
+     * Rectangular window, the frame as it is
+     */
+    RECTANGULAR,
+    /**
+     * Bartlett (triangular) window
+     */
+    BARTLETT,
+    /**
+     * Hanning window
+     */
+    HANNING,
+    /**
+     * Hamming window, the one of the spectrograms
+     */
+    HAMMING,
+    /**
+     * Blackman window
+     */
+    BLACKMAN,
+    /**
+     * 4-term Blackman-Harris window, side lobes at -92dB
+     */
+    BLACKMAN_HARRIS,
+    /**
+     * Kaiser window, its beta trades the main lobe width for the side lobes
+     */
+    KAISER;
+
+    /**
+     * Get a window type by name, ignoring the case
+     *
+     * @param name
+     *            name of the type, e.g. "Hamming"
+     * @return the window type, null if there is no such type
+     */
+    public static WindowType forName(String name) {
+        WindowType[] types = values();
+        for (int i = 0; i < types.length; i++) {
+            if (types[i].name().equalsIgnoreCase(name)) {
+                return types[i];
+            }
+        }
+        return null;
+    }
+}
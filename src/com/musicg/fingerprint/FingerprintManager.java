@@ -21,6 +21,7 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -28,9 +29,14 @@ import java.util.List;
 import com.musicg.dsp.Resampler;
 import com.musicg.processor.TopManyPointsProcessorChain;
 import com.musicg.properties.FingerprintProperties;
+import com.musicg.wave.ChannelPolicy;
+import com.musicg.wave.SampleDecoder;
 import com.musicg.wave.Wave;
-import com.musicg.wave.WaveHeader;
+import com.musicg.wave.WaveReader;
+import com.musicg.wave.extension.FloatSpectrogram;
 import com.musicg.wave.extension.Spectrogram;
+import com.musicg.wave.extension.SpectrogramSettings;
+import com.musicg.wave.extension.StreamingSpectrogram;
 
 /**
  * Audio fingerprint manager, handle fingerprint operations
@@ -48,6 +54,11 @@ public class FingerprintManager {
     private int numRobustPointsPerFrame = fingerprintProperties
 	    .getNumRobustPointsPerFrame();
     private int numFilterBanks = fingerprintProperties.getNumFilterBanks();
+    private boolean singlePrecision = false;
+    private boolean antiAliasing = false;
+
+    // intensities below are silent in the normalized spectrograms
+    private static final double MIN_VALID_AMPLITUDE = 0.00000000001F;
 
     /**
      * Constructor
@@ -56,6 +67,45 @@ public class FingerprintManager {
 
     }
 
+    /**
+     * Use a single precision spectrogram for the extraction, which halves the
+     * memory taken by the spectrogram. The robust points are the same, only
+     * the intensities differ in the last bits.
+     * 
+     * @param singlePrecision
+     *            true to extract from a {@link FloatSpectrogram}
+     */
+    public void setSinglePrecision(boolean singlePrecision) {
+	this.singlePrecision = singlePrecision;
+    }
+
+    /**
+     * @return true if the extraction uses a single precision spectrogram
+     */
+    public boolean isSinglePrecision() {
+	return singlePrecision;
+    }
+
+    /**
+     * Resample the wave with a polyphase FIR filter instead of the linear
+     * interpolation. The frequencies above the Nyquist frequency of the
+     * fingerprint sample rate no longer fold back as spurious peaks, but the
+     * fingerprints differ from the ones extracted without the filter.
+     * 
+     * @param antiAliasing
+     *            true to filter while resampling
+     */
+    public void setAntiAliasing(boolean antiAliasing) {
+	this.antiAliasing = antiAliasing;
+    }
+
+    /**
+     * @return true if the extraction filters while resampling
+     */
+    public boolean isAntiAliasing() {
+	return antiAliasing;
+    }
+
     /**
      * Extract fingerprint from Wave object
      * 
@@ -65,31 +115,101 @@ public class FingerprintManager {
      */
     public byte[] extractFingerprint(Wave wave) {
 
-	int[][] coordinates; // coordinates[x][0..3]=y0..y3
-	byte[] fingerprint = new byte[0];
-
-	// resample to target rate
-	Resampler resampler = new Resampler();
+	// resample the amplitudes to target rate, no bytes in between
+	Resampler resampler = new Resampler(antiAliasing);
 	int sourceRate = wave.getWaveHeader().getSampleRate();
 	int targetRate = fingerprintProperties.getSampleRate();
 
-	byte[] resampledWaveData = resampler.reSample(wave.getBytes(), wave
-		.getWaveHeader().getBitsPerSample(), sourceRate, targetRate);
+	// channels are downmixed while decoding, samples of more than 16 bit
+	// stay in single precision
+	short[] resampledAmplitudes = null;
+	float[] resampledFloatAmplitudes = null;
+	if (SampleDecoder.isHighResolution(wave.getWaveHeader())) {
+	    resampledFloatAmplitudes = resampler.reSample(
+		    wave.getSharedFloatSampleAmplitudes(ChannelPolicy.DOWNMIX),
+		    sourceRate, targetRate);
+	} else {
+	    resampledAmplitudes = resampler.reSample(
+		    wave.getSharedSampleAmplitudes(ChannelPolicy.DOWNMIX), sourceRate,
+		    targetRate);
+	}
+	// end resample to target rate
+
+	return extractFingerprint(resampledAmplitudes, resampledFloatAmplitudes);
+    }
+
+    /**
+     * Extract fingerprint from a stream, read block by block. The frames of
+     * the spectrogram are computed while the amplitudes are read and
+     * resampled, and only the strongest intensities of each frame are kept:
+     * neither the WAV bytes, the amplitudes nor the spectrogram are loaded.
+     * 
+     * @param reader
+     *            reader of the WAV stream, at the start of the data
+     * @return fingerprint in bytes, the same as the one of the Wave
+     * @throws IOException
+     *             IO exception
+     */
+    public byte[] extractFingerprint(WaveReader reader) throws IOException {
+
+	reader.setChannelPolicy(ChannelPolicy.DOWNMIX);
+	ResampledSource source = new ResampledSource(reader,
+		fingerprintProperties.getSampleRate(), antiAliasing);
+	StreamingSpectrogram spectrogram = new StreamingSpectrogram(source,
+		new SpectrogramSettings(sampleSizePerFrame, overlapFactor));
+
+	int numY = spectrogram.getNumFrequencyUnit();
+	StreamingIntensitySource spectorgramData = new StreamingIntensitySource(
+		numY, numY / numFilterBanks * numFilterBanks,
+		numRobustPointsPerFrame, singlePrecision);
+	double[] spectrum = new double[numY];
+	while (spectrogram.nextFrame(spectrum)) {
+	    spectorgramData.addFrame(spectrum);
+	}
+
+	return getFingerprint(spectorgramData,
+		spectorgramData.getRobustPointList(numRobustPointsPerFrame));
+    }
 
-	// update the wave header
-	WaveHeader resampledWaveHeader = wave.getWaveHeader();
-	resampledWaveHeader.setSampleRate(targetRate);
+    // fingerprint of the amplitudes at the fingerprint sample rate, either
+    // the short or the float ones
+    private byte[] extractFingerprint(short[] resampledAmplitudes,
+	    float[] resampledFloatAmplitudes) {
 
-	// make resampled wave
-	Wave resampledWave = new Wave(resampledWaveHeader, resampledWaveData);
-	// end resample to target rate
+	int targetRate = fingerprintProperties.getSampleRate();
 
 	// get spectrogram's data
-	Spectrogram spectrogram = resampledWave.getSpectrogram(
-		sampleSizePerFrame, overlapFactor);
-	double[][] spectorgramData = spectrogram.getNormalizedSpectrogramData();
+	IntensitySource spectorgramData;
+	if (singlePrecision) {
+	    FloatSpectrogram spectrogram = resampledFloatAmplitudes != null ? new FloatSpectrogram(
+		    resampledFloatAmplitudes, targetRate, sampleSizePerFrame,
+		    overlapFactor) : new FloatSpectrogram(resampledAmplitudes,
+		    targetRate, sampleSizePerFrame, overlapFactor);
+	    spectorgramData = new FloatIntensitySource(
+		    spectrogram.getNormalizedSpectrogramArray(),
+		    spectrogram.getNumFrames(), spectrogram.getStride());
+	} else {
+	    SpectrogramSettings settings = new SpectrogramSettings(
+		    sampleSizePerFrame, overlapFactor);
+	    Spectrogram spectrogram = resampledFloatAmplitudes != null ? new Spectrogram(
+		    resampledFloatAmplitudes, targetRate, settings)
+		    : new Spectrogram(resampledAmplitudes, targetRate, settings);
+	    spectorgramData = new DoubleIntensitySource(
+		    spectrogram.getNormalizedSpectrogramArray(),
+		    spectrogram.getNumFrames(), spectrogram.getStride());
+	}
 
-	List<Integer>[] pointsLists = getRobustPointList(spectorgramData);
+	return getFingerprint(spectorgramData,
+		getRobustPointList(spectorgramData));
+    }
+
+    // fingerprint of the robust points of the frames, with their
+    // intensities
+    private byte[] getFingerprint(IntensitySource spectorgramData,
+	    List<Integer>[] pointsLists) {
+
+	int[][] coordinates; // coordinates[x][0..3]=y0..y3
+	byte[] fingerprint = new byte[0];
 	int numFrames = pointsLists.length;
 
 	// prepare fingerprint bytes
@@ -128,7 +248,7 @@ public class FingerprintManager {
 
 		    // next 4 bytes is intensity
 		    // spectorgramData is ranged from 0~1
-		    int intensity = (int) (spectorgramData[x][y] * Integer.MAX_VALUE);
+		    int intensity = (int) (spectorgramData.get(x, y) * Integer.MAX_VALUE);
 		    byteList.add((byte) (intensity >> 24));
 		    byteList.add((byte) (intensity >> 16));
 		    byteList.add((byte) (intensity >> 8));
@@ -216,10 +336,10 @@ public class FingerprintManager {
     }
 
     // robustLists[x]=y1,y2,y3,...
-    private List<Integer>[] getRobustPointList(double[][] spectrogramData) {
+    private List<Integer>[] getRobustPointList(IntensitySource spectrogramData) {
 
-	int numX = spectrogramData.length;
-	int numY = spectrogramData[0].length;
+	int numX = spectrogramData.getNumX();
+	int numY = spectrogramData.getNumY();
 
 	double[][] allBanksIntensities = new double[numX][numY];
 	int bandwidthPerBank = numY / numFilterBanks;
@@ -230,8 +350,8 @@ public class FingerprintManager {
 
 	    for (int i = 0; i < numX; i++) {
 		for (int j = 0; j < bandwidthPerBank; j++) {
-		    bankIntensities[i][j] = spectrogramData[i][j + b
-			    * bandwidthPerBank];
+		    bankIntensities[i][j] = spectrogramData.get(i, j + b
+			    * bandwidthPerBank);
 		}
 	    }
 
@@ -262,7 +382,7 @@ public class FingerprintManager {
 	}
 	// end find robust points
 
-	List<Integer>[] robustLists = new LinkedList[spectrogramData.length];
+	List<Integer>[] robustLists = new LinkedList[numX];
 	for (int i = 0; i < robustLists.length; i++) {
 	    robustLists[i] = new LinkedList<>();
 	}
@@ -299,4 +419,191 @@ public class FingerprintManager {
 	int numFrames = ((int) (fingerprint[fingerprint.length - 8] & 0xff) << 8 | (int) (fingerprint[fingerprint.length - 7] & 0xff)) + 1;
 	return numFrames;
     }
+
+    // intensities[x][y] of a spectrogram, whatever its precision
+    private interface IntensitySource {
+	int getNumX();
+
+	int getNumY();
+
+	double get(int x, int y);
+    }
+
+    // row-major intensities
+    private static class DoubleIntensitySource implements IntensitySource {
+	private final double[] intensities;
+	private final int numX;
+	private final int stride;
+
+	DoubleIntensitySource(double[] intensities, int numX, int stride) {
+	    this.intensities = intensities;
+	    this.numX = numX;
+	    this.stride = stride;
+	}
+
+	@Override
+	public int getNumX() {
+	    return numX;
+	}
+
+	@Override
+	public int getNumY() {
+	    return stride;
+	}
+
+	@Override
+	public double get(int x, int y) {
+	    return intensities[x * stride + y];
+	}
+    }
+
+    // row-major intensities
+    private static class FloatIntensitySource implements IntensitySource {
+	private final float[] intensities;
+	private final int numX;
+	private final int stride;
+
+	FloatIntensitySource(float[] intensities, int numX, int stride) {
+	    this.intensities = intensities;
+	    this.numX = numX;
+	    this.stride = stride;
+	}
+
+	@Override
+	public int getNumX() {
+	    return numX;
+	}
+
+	@Override
+	public int getNumY() {
+	    return stride;
+	}
+
+	@Override
+	public double get(int x, int y) {
+	    return intensities[x * stride + y];
+	}
+    }
+
+    // intensities of a spectrogram computed frame by frame, of which only
+    // the numPoints+1 largest absolute intensities of the filter banks of
+    // each frame are kept. getRobustPointList finds in a frame the points
+    // left positive by the normalization, which keeps the order of the
+    // intensities: a frame has numPoints of them only if they are all kept.
+    // The banks must have more than numPoints+1 units.
+    private static class StreamingIntensitySource implements IntensitySource {
+	private final int numY;
+	private final int numBankUnits; // units of the filter banks
+	private final int numKept; // intensities kept per frame
+	private final boolean singlePrecision;
+	private double[] values = new double[0]; // decreasing in a frame
+	private int[] units = new int[0];
+	private int numX;
+	private double maxAmp, minAmp; // scanned the way the spectrograms do
+	private double diff;
+
+	StreamingIntensitySource(int numY, int numBankUnits, int numPoints,
+		boolean singlePrecision) {
+	    this.numY = numY;
+	    this.numBankUnits = numBankUnits;
+	    this.numKept = Math.min(numPoints + 1, numBankUnits);
+	    this.singlePrecision = singlePrecision;
+	    maxAmp = singlePrecision ? Float.MIN_VALUE : Double.MIN_VALUE;
+	    minAmp = singlePrecision ? Float.MAX_VALUE : Double.MAX_VALUE;
+	}
+
+	void addFrame(double[] spectrum) {
+	    int offset = numX * numKept;
+	    if (offset + numKept > values.length) {
+		int length = Math.max(values.length * 2, numKept * 64);
+		values = Arrays.copyOf(values, length);
+		units = Arrays.copyOf(units, length);
+	    }
+
+	    int numFound = 0;
+	    for (int y = 0; y < numY; y++) {
+		double value = singlePrecision ? (float) spectrum[y] : spectrum[y];
+		if (value > maxAmp) {
+		    maxAmp = value;
+		} else if (value < minAmp) {
+		    minAmp = value;
+		}
+
+		if (y < numBankUnits
+			&& (numFound < numKept || value > values[offset + numKept - 1])) {
+		    // insert among the largest intensities
+		    int k = numFound < numKept ? numFound++ : numKept - 1;
+		    while (k > 0 && values[offset + k - 1] < value) {
+			values[offset + k] = values[offset + k - 1];
+			units[offset + k] = units[offset + k - 1];
+			k--;
+		    }
+		    values[offset + k] = value;
+		    units[offset + k] = y;
+		}
+	    }
+	    numX++;
+	}
+
+	// robustLists[x]=y1,y2,y3,... once all the frames are added
+	List<Integer>[] getRobustPointList(int numPoints) {
+	    // avoiding divided by zero
+	    if (minAmp == 0) {
+		minAmp = MIN_VALID_AMPLITUDE;
+	    }
+	    diff = singlePrecision ? Math.log10((float) (maxAmp / minAmp)) : Math
+		    .log10(maxAmp / minAmp);
+
+	    List<Integer>[] robustLists = new LinkedList[numX];
+	    for (int x = 0; x < numX; x++) {
+		robustLists[x] = new LinkedList<>();
+		int offset = x * numKept;
+		int numPositive = 0;
+		while (numPositive < numKept
+			&& normalize(values[offset + numPositive]) > 0) {
+		    numPositive++;
+		}
+		if (numPositive == numPoints) {
+		    int[] frameUnits = Arrays.copyOfRange(units, offset, offset
+			    + numPositive);
+		    Arrays.sort(frameUnits);
+		    for (int y : frameUnits) {
+			robustLists[x].add(y);
+		    }
+		}
+	    }
+	    return robustLists;
+	}
+
+	// logarithm normalized intensity, the one of the spectrograms
+	private double normalize(double value) {
+	    if (value < MIN_VALID_AMPLITUDE) {
+		return 0;
+	    }
+	    if (singlePrecision) {
+		return (float) (Math.log10((float) (value / minAmp)) / diff);
+	    }
+	    return Math.log10(value / minAmp) / diff;
+	}
+
+	@Override
+	public int getNumX() {
+	    return numX;
+	}
+
+	@Override
+	public int getNumY() {
+	    return numY;
+	}
+
+	@Override
+	public double get(int x, int y) {
+	    for (int k = x * numKept; k < (x + 1) * numKept; k++) {
+		if (units[k] == y) {
+		    return normalize(values[k]);
+		}
+	    }
+	    return 0;
+	}
+    }
 }
\ No newline at end of file
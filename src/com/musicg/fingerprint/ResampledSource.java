@@ -0,0 +1,255 @@
+/*
+ * Copyright (C) 2012 Jacquet Wong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.musicg.fingerprint;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import com.musicg.dsp.PolyphaseResampler;
+import com.musicg.dsp.Resampler;
+import com.musicg.wave.SampleDecoder;
+import com.musicg.wave.SampleSource;
+import com.musicg.wave.WaveReader;
+
+/**
+ * The amplitudes of a {@link WaveReader} resampled block by block, the same
+ * as the ones {@link Resampler} gives for the whole signal: 16 bit samples
+ * are resampled to 16 bit, samples of more than 16 bit in single precision.
+ *
+ * Only a block is kept, unless the linear interpolation has to wait for the
+ * end of a stream whose header does not tell its number of samples.
+ *
+ * @author Jacquet Wong
+ */
+class ResampledSource implements SampleSource {
+
+    // amplitudes read at a time from the reader
+    private static final int READ_BLOCK_SIZE = 1 << 14;
+
+    private final WaveReader reader;
+    private final int sourceRate, targetRate;
+    private final boolean highResolution;
+    private final PolyphaseResampler polyphaseResampler; // null if linear
+    private final float[] block;
+    private final short[] shortBlock, shortOutput; // 16 bit samples only
+    private float[] output;
+    private int outputPosition, outputLength; // outputs not read yet
+    private long numInputs; // samples read from the reader
+    private long numOutputs; // samples resampled
+    private boolean ended;
+
+    // linear interpolation, the one of LinearInterpolation.interpolate
+    private float[] inputs; // inputs from inputStart, the whole signal if
+                            // its length is not known
+    private int numBuffered;
+    private long inputStart;
+    private long interpolationInputs = -1; // length of the whole signal
+    private long interpolationOutputs;
+    private float lengthMultiplier;
+
+    /**
+     * Constructor
+     *
+     * @param reader
+     *            reader of the amplitudes, at the start of the data
+     * @param targetRate
+     *            sample rate of the resampled amplitudes
+     * @param antiAliasing
+     *            true to resample with a {@link PolyphaseResampler}, when
+     *            it supports the rates
+     */
+    ResampledSource(WaveReader reader, int targetRate, boolean antiAliasing) {
+        this.reader = reader;
+        this.sourceRate = reader.getSampleRate();
+        this.targetRate = targetRate;
+        this.highResolution = SampleDecoder.isHighResolution(reader
+                .getWaveHeader());
+
+        boolean resampling = sourceRate != targetRate;
+        boolean filtering = resampling && antiAliasing
+                && PolyphaseResampler.isSupported(sourceRate, targetRate);
+        polyphaseResampler = filtering ? new PolyphaseResampler(sourceRate,
+                targetRate) : null;
+
+        block = new float[READ_BLOCK_SIZE];
+        shortBlock = highResolution ? null : new short[READ_BLOCK_SIZE];
+        // room for a block or for the samples flushed at the end
+        int outputSize = filtering ? polyphaseResampler.getMaxOutputLength(Math
+                .max(READ_BLOCK_SIZE, polyphaseResampler.getHalfLength()))
+                : READ_BLOCK_SIZE;
+        shortOutput = filtering && !highResolution ? new short[outputSize]
+                : null;
+        output = resampling ? new float[outputSize] : block;
+
+        if (resampling && !filtering) {
+            inputs = new float[READ_BLOCK_SIZE + 1];
+            long numSamples = reader.getNumSamples();
+            if (numSamples >= 0) {
+                startInterpolation(numSamples);
+            }
+        }
+    }
+
+    @Override
+    public int getSampleRate() {
+        return targetRate;
+    }
+
+    @Override
+    public int read(float[] amplitudes, int offset, int length)
+            throws IOException {
+        while (outputPosition == outputLength) {
+            if (ended) {
+                return -1;
+            }
+            outputPosition = 0;
+            outputLength = resampleBlock();
+            numOutputs += outputLength;
+        }
+        int n = Math.min(length, outputLength - outputPosition);
+        System.arraycopy(output, outputPosition, amplitudes, offset, n);
+        outputPosition += n;
+        return n;
+    }
+
+    // read a block and resample it into output, the samples still waiting
+    // for input once the reader ended
+    private int resampleBlock() throws IOException {
+        int n;
+        if (highResolution) {
+            n = reader.read(block, 0, block.length);
+        } else {
+            n = reader.read(shortBlock, 0, shortBlock.length);
+            for (int i = 0; i < n; i++) {
+                block[i] = shortBlock[i];
+            }
+        }
+        if (n < 0) {
+            ended = true;
+            n = 0;
+        }
+        numInputs += n;
+
+        if (polyphaseResampler != null) {
+            return filter(n);
+        }
+        if (inputs != null) {
+            return interpolate(n);
+        }
+        return n;
+    }
+
+    private int filter(int n) {
+        int numResampled;
+        if (!ended) {
+            if (highResolution) {
+                return polyphaseResampler.process(block, 0, n, output, 0);
+            }
+            numResampled = polyphaseResampler.process(shortBlock, 0, n,
+                    shortOutput, 0);
+        } else if (highResolution) {
+            numResampled = polyphaseResampler.flush(output, 0);
+        } else {
+            numResampled = polyphaseResampler.flush(shortOutput, 0);
+        }
+        if (!highResolution) {
+            for (int i = 0; i < numResampled; i++) {
+                output[i] = shortOutput[i];
+            }
+        }
+        if (!ended) {
+            return numResampled;
+        }
+
+        // as many samples as the resampling of the whole signal, the missing
+        // ones are silent
+        int newLength = Math.round(((float) numInputs / sourceRate
+                * targetRate));
+        int numLeft = (int) Math.max(newLength - numOutputs, 0);
+        ensureOutput(numLeft);
+        for (int i = numResampled; i < numLeft; i++) {
+            output[i] = 0;
+        }
+        return numLeft;
+    }
+
+    private void startInterpolation(long numSamples) {
+        interpolationInputs = numSamples;
+        int newLength = Math.round(((float) numSamples / sourceRate
+                * targetRate));
+        interpolationOutputs = newLength;
+        lengthMultiplier = (float) newLength / numSamples;
+    }
+
+    private int interpolate(int n) {
+        if (numBuffered + n > inputs.length) {
+            inputs = Arrays.copyOf(inputs, Math.max(inputs.length * 2,
+                    numBuffered + n));
+        }
+        System.arraycopy(block, 0, inputs, numBuffered, n);
+        numBuffered += n;
+        if (interpolationInputs < 0) {
+            if (!ended) {
+                return 0;
+            }
+            // the whole signal is there
+            startInterpolation(numInputs);
+        }
+
+        long last = interpolationInputs - 1;
+        int count = 0;
+        for (long i = numOutputs; i < interpolationOutputs; i++) {
+            // get the nearest positions for the interpolated point
+            float currentPosition = i / lengthMultiplier;
+            int nearestLeftPosition = (int) currentPosition;
+            long nearestRightPosition = Math.min(nearestLeftPosition + 1L,
+                    last);
+            if (nearestRightPosition >= inputStart + numBuffered && !ended) {
+                break;
+            }
+
+            float left = getInput(nearestLeftPosition);
+            float slope = getInput(nearestRightPosition) - left;
+            float positionFromLeft = currentPosition - nearestLeftPosition;
+            float value = slope * positionFromLeft + left;
+
+            ensureOutput(count + 1);
+            output[count++] = highResolution ? value : (short) value;
+        }
+
+        // keep the inputs from the next left position on
+        long next = (long) ((numOutputs + count) / lengthMultiplier);
+        int drop = (int) Math.max(Math.min(next - inputStart, numBuffered), 0);
+        System.arraycopy(inputs, drop, inputs, 0, numBuffered - drop);
+        numBuffered -= drop;
+        inputStart += drop;
+        return count;
+    }
+
+    // an input sample, silent past the end of a stream shorter than its
+    // header tells
+    private float getInput(long position) {
+        int index = (int) (position - inputStart);
+        return index < numBuffered ? inputs[index] : 0;
+    }
+
+    private void ensureOutput(int length) {
+        if (length > output.length) {
+            output = Arrays.copyOf(output, Math.max(output.length * 2, length));
+        }
+    }
+}
@@ -9,6 +9,7 @@ import java.io.IOException;
 import javax.imageio.ImageIO;
 
 import com.musicg.wave.Wave;
+import com.musicg.wave.extension.LazySpectrogram;
 import com.musicg.wave.extension.Spectrogram;
 
 /**
@@ -149,8 +150,63 @@ public class GraphicRender {
      *            output file
      */
     public void renderSpectrogram(Spectrogram spectrogram, String filename) {
-        renderSpectrogramData(spectrogram.getNormalizedSpectrogramData(),
-                filename);
+        double[] spectrogramData = spectrogram.getNormalizedSpectrogramArray();
+
+        if (spectrogramData != null) {
+            int width = spectrogram.getNumFrames();
+            int height = spectrogram.getStride();
+
+            BufferedImage bufferedImage = new BufferedImage(width, height,
+                    BufferedImage.TYPE_INT_RGB);
+            for (int i = 0; i < width; i++) {
+                int rowOffset = spectrogram.getRowOffset(i);
+                for (int j = 0; j < height; j++) {
+                    setSpectrogramPixel(bufferedImage, i, j,
+                            spectrogramData[rowOffset + j]);
+                }
+            }
+            saveImage(bufferedImage, filename);
+        } else {
+            System.err.println("renderSpectrogram error: Empty Wave");
+        }
+    }
+
+    /**
+     * Render a range of frames of a spectrogram, only these frames are
+     * computed
+     * 
+     * @param spectrogram
+     *            spectrogram object
+     * @param fromFrame
+     *            first frame rendered
+     * @param toFrame
+     *            frame after the last one rendered
+     * @param filename
+     *            output file
+     */
+    public void renderSpectrogram(LazySpectrogram spectrogram, int fromFrame,
+            int toFrame, String filename) {
+        fromFrame = Math.max(fromFrame, 0);
+        toFrame = Math.min(toFrame, spectrogram.getNumFrames());
+
+        if (toFrame > fromFrame) {
+            int width = toFrame - fromFrame;
+            int height = spectrogram.getNumFrequencyUnit();
+
+            BufferedImage bufferedImage = new BufferedImage(width, height,
+                    BufferedImage.TYPE_INT_RGB);
+            for (int i = 0; i < width; i++) {
+                double[] frame = spectrogram.getNormalizedFrame(fromFrame + i);
+                for (int j = 0; j < height; j++) {
+                    // the marker is a frame number, i is the column
+                    setSpectrogramPixel(bufferedImage, i, fromFrame + i, j,
+                            frame[j]);
+                }
+            }
+            saveImage(bufferedImage, filename);
+        } else {
+            System.err.println("renderSpectrogram error: Empty frame range");
+        }
     }
 
     /**
@@ -174,36 +230,51 @@ public class GraphicRender {
             BufferedImage bufferedImage = new BufferedImage(width, height,
                     BufferedImage.TYPE_INT_RGB);
             for (int i = 0; i < width; i++) {
-                if (i == xMarker) {
-                    for (int j = 0; j < height; j++) {
-                        bufferedImage.setRGB(i, j, 0xFF00); // green
-                    }
-                } else {
-                    for (int j = 0; j < height; j++) {
-                        int value;
-                        if (j == yMarker) {
-                            value = 0xFF0000; // red
-                        } else {
-                            value = 255 - (int) (spectrogramData[i][j] * 255);
-                        }
-                        bufferedImage.setRGB(i, height - 1 - j, value << 16
-                                | value << 8 | value);
-                    }
+                for (int j = 0; j < height; j++) {
+                    setSpectrogramPixel(bufferedImage, i, j,
+                            spectrogramData[i][j]);
                 }
             }
-
-            try {
-                int dotPos = filename.lastIndexOf(".");
-                String extension = filename.substring(dotPos + 1);
-                ImageIO.write(bufferedImage, extension, new File(filename));
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+            saveImage(bufferedImage, filename);
         } else {
             System.err.println("renderSpectrogramData error: Empty Wave");
         }
     }
 
+    // x is the time, y is the frequency growing upwards
+    private void setSpectrogramPixel(BufferedImage bufferedImage, int x,
+            int y, double intensity) {
+        setSpectrogramPixel(bufferedImage, x, x, y, intensity);
+    }
+
+    // x is the column of the frame number, compared to the x marker
+    private void setSpectrogramPixel(BufferedImage bufferedImage, int x,
+            int frameNumber, int y, double intensity) {
+        int height = bufferedImage.getHeight();
+        if (frameNumber == xMarker) {
+            bufferedImage.setRGB(x, y, 0xFF00); // green
+        } else {
+            int value;
+            if (y == yMarker) {
+                value = 0xFF0000; // red
+            } else {
+                value = 255 - (int) (intensity * 255);
+            }
+            bufferedImage.setRGB(x, height - 1 - y, value << 16 | value << 8
+                    | value);
+        }
+    }
+
+    private void saveImage(BufferedImage bufferedImage, String filename) {
+        try {
+            int dotPos = filename.lastIndexOf(".");
+            String extension = filename.substring(dotPos + 1);
+            ImageIO.write(bufferedImage, extension, new File(filename));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
     /**
      * Set the vertical marker
      * 
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2012 Jacquet Wong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.musicg.main.demo;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.InputStream;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.TargetDataLine;
+
+import com.musicg.api.ClapApi;
+import com.musicg.api.DetectionApi;
+import com.musicg.api.WhistleApi;
+import com.musicg.capture.CapturePipeline;
+import com.musicg.capture.DetectionListener;
+import com.musicg.wave.StreamingWaveTypeDetector;
+import com.musicg.wave.WaveHeader;
+import com.musicg.wave.WaveTypeListener;
+
+/**
+ * Detects whistles and claps while capturing. With a WAV file name the file
+ * stands in for the line, otherwise the default microphone is captured for
+ * the given number of seconds.
+ *
+ * @author Jacquet Wong
+ */
+public class CaptureDemo {
+
+    /**
+     * @param args
+     *            a WAV file name, or "-" and the seconds to capture
+     * @throws Exception
+     */
+    public static void main(String[] args) throws Exception {
+
+        String filename = args.length > 0 ? args[0] : "audio_work/whistle.wav";
+        int fftSampleSize = 1024;
+
+        CapturePipeline pipeline;
+        TargetDataLine line = null;
+        WaveHeader waveHeader;
+        if (!filename.equals("-")) {
+            InputStream inputStream = new BufferedInputStream(
+                    new FileInputStream(filename));
+            waveHeader = new WaveHeader(inputStream);
+            pipeline = new CapturePipeline(waveHeader, inputStream,
+                    fftSampleSize);
+        } else {
+            AudioFormat format = new AudioFormat(44100, 16, 1, true, false);
+            line = AudioSystem.getTargetDataLine(format);
+            line.open(format);
+            waveHeader = new WaveHeader(44100, 1, 16);
+            pipeline = new CapturePipeline(line, fftSampleSize);
+        }
+
+        final WhistleApi whistleApi = new WhistleApi(waveHeader);
+        final int[] counts = new int[2];
+
+        // a whistle starts and ends with the vote of the last frames
+        final StreamingWaveTypeDetector whistleDetector;
+        whistleDetector = new StreamingWaveTypeDetector(whistleApi);
+        whistleDetector.addListener(new WaveTypeListener() {
+            @Override
+            public void onProbability(long frameNumber, double probability) {
+            }
+
+            @Override
+            public void onOnset(long frameNumber) {
+                System.out.println("whistle starts at frame " + frameNumber);
+            }
+
+            @Override
+            public void onOffset(long frameNumber) {
+                System.out.println("whistle ends at frame " + frameNumber);
+            }
+        });
+
+        pipeline.addDetectionApi(whistleApi);
+        pipeline.addDetectionApi(new ClapApi(waveHeader));
+        pipeline.addDetectionListener(new DetectionListener() {
+            @Override
+            public void onDetection(DetectionApi detectionApi,
+                    long frameNumber, boolean detected) {
+                if (detectionApi == whistleApi) {
+                    whistleDetector.addResult(detected);
+                }
+                if (detected) {
+                    counts[detectionApi == whistleApi ? 0 : 1]++;
+                }
+            }
+        });
+
+        pipeline.start();
+        if (line != null) {
+            int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+            Thread.sleep(seconds * 1000L);
+            pipeline.stop();
+        }
+        pipeline.join();
+        if (line != null) {
+            line.close();
+        }
+
+        System.out.println(counts[0] + " whistle frames, " + counts[1]
+                + " clap frames, whistle probability "
+                + whistleDetector.getProbability());
+        System.out.println(pipeline);
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2012 Jacquet Wong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.musicg.main.demo;
+
+import java.util.concurrent.ArrayBlockingQueue;
+
+import com.musicg.capture.FrameRingBuffer;
+import com.musicg.capture.WaitStrategy;
+
+/**
+ * Measures the frames per second handed from a producer thread to a
+ * consumer thread by a FrameRingBuffer, with each wait strategy and batch
+ * size, against an ArrayBlockingQueue of byte arrays allocated per frame.
+ * The buffers for multiple producers and consumers are measured with
+ * several threads on each side. Every run is repeated, the first ones warm
+ * up the JIT.
+ *
+ * @author Jacquet Wong
+ */
+public class RingBufferBenchmark {
+
+    private static final int FRAME_SIZE = 1024; // amplitudes of a frame
+    private static final int CAPACITY = 64;
+    private static final int NUM_FRAMES = 200000;
+    private static final int NUM_RUNS = 3;
+    private static final int NUM_THREADS = 2; // producers and consumers
+
+    /**
+     * @param args
+     *            not used
+     * @throws InterruptedException
+     */
+    public static void main(String[] args) throws InterruptedException {
+
+        final short[] source = new short[FRAME_SIZE];
+        for (int i = 0; i < source.length; i++) {
+            source[i] = (short) i;
+        }
+
+        for (int run = 0; run < NUM_RUNS; run++) {
+            System.out.println("run " + (run + 1));
+            for (WaitStrategy waitStrategy : WaitStrategy.values()) {
+                report(waitStrategy + " batch 1",
+                        runRingBuffer(source, waitStrategy, 1, 1));
+                report(waitStrategy + " batch 16",
+                        runRingBuffer(source, waitStrategy, 16, 1));
+                report(waitStrategy + " multiple batch 1",
+                        runRingBuffer(source, waitStrategy, 1, NUM_THREADS));
+                report(waitStrategy + " multiple batch 16",
+                        runRingBuffer(source, waitStrategy, 16, NUM_THREADS));
+            }
+            report("ArrayBlockingQueue<byte[]>", runQueue(source));
+        }
+    }
+
+    private static void report(String name, long nanos) {
+        System.out.println(String.format("  %-28s %8.0f frames/s %6d ns/frame",
+                name, NUM_FRAMES * 1e9 / nanos, nanos / NUM_FRAMES));
+    }
+
+    // copy the source in every frame, read a sample of every frame. Each
+    // of the producers and consumers hands its share of the frames, the
+    // buffer is for multiple threads if there are more than one of them.
+    private static long runRingBuffer(final short[] source,
+            WaitStrategy waitStrategy, final int batch, int numThreads)
+            throws InterruptedException {
+        final FrameRingBuffer ringBuffer = new FrameRingBuffer(CAPACITY,
+                FRAME_SIZE, numThreads > 1, waitStrategy);
+        final int numFrames = NUM_FRAMES / numThreads;
+        final long[] checksum = new long[numThreads];
+
+        Thread[] threads = new Thread[numThreads * 2];
+        for (int t = 0; t < numThreads; t++) {
+            final int consumerNumber = t;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < numFrames; i += batch) {
+                        long sequence = ringBuffer.next(batch);
+                        for (int j = 0; j < batch; j++) {
+                            checksum[consumerNumber] += ringBuffer
+                                    .getFrame(sequence + j)[j];
+                        }
+                        ringBuffer.release(sequence, batch);
+                    }
+                }
+            });
+            threads[numThreads + t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < numFrames; i += batch) {
+                        long sequence = ringBuffer.claim(batch);
+                        for (int j = 0; j < batch; j++) {
+                            System.arraycopy(source, 0,
+                                    ringBuffer.getFrame(sequence + j), 0,
+                                    FRAME_SIZE);
+                        }
+                        ringBuffer.publish(sequence, batch);
+                    }
+                }
+            });
+        }
+
+        long time = System.nanoTime();
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return System.nanoTime() - time;
+    }
+
+    // the same frames in bytes, a new array per frame
+    private static long runQueue(final short[] source)
+            throws InterruptedException {
+        final ArrayBlockingQueue<byte[]> queue = new ArrayBlockingQueue<byte[]>(
+                CAPACITY);
+        final long[] checksum = new long[1];
+
+        Thread consumer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (int i = 0; i < NUM_FRAMES; i++) {
+                        checksum[0] += queue.take()[i & 15];
+                    }
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+            }
+        });
+
+        long time = System.nanoTime();
+        consumer.start();
+        for (int i = 0; i < NUM_FRAMES; i++) {
+            byte[] frame = new byte[FRAME_SIZE * 2];
+            for (int j = 0; j < FRAME_SIZE; j++) {
+                frame[j * 2] = (byte) source[j];
+                frame[j * 2 + 1] = (byte) (source[j] >> 8);
+            }
+            queue.put(frame);
+        }
+        consumer.join();
+        return System.nanoTime() - time;
+    }
+}
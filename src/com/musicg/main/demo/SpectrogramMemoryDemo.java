@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2012 Jacquet Wong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.musicg.main.demo;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+
+import com.musicg.wave.Wave;
+import com.musicg.wave.extension.Spectrogram;
+
+/**
+ * Measures the memory allocated while building overlapped spectrograms. The
+ * frames are read from the amplitudes at every hop, an overlapped copy of the
+ * samples would take numSamples * overlapFactor shorts on top of that.
+ *
+ * @author Jacquet Wong
+ */
+public class SpectrogramMemoryDemo {
+
+    /**
+     * @param args
+     *            optional WAV file name
+     * @throws IOException
+     */
+    public static void main(String[] args) throws IOException {
+
+        String filename = args.length > 0 ? args[0]
+                : "audio_work/songs/top_of_the_world_rec.wav";
+        int fftSampleSize = 2048;
+        int numRuns = 5;
+
+        Wave wave = new Wave(filename);
+        int numSamples = wave.getSampleAmplitudes().length;
+        System.out.println(filename + ": " + numSamples + " samples");
+
+        for (int overlapFactor : new int[] { 0, 2, 4, 8 }) {
+            // warm up
+            new Spectrogram(wave, fftSampleSize, overlapFactor);
+
+            long allocated = 0;
+            long time = 0;
+            for (int i = 0; i < numRuns; i++) {
+                long allocatedBefore = getAllocatedBytes();
+                long timeBefore = System.nanoTime();
+                new Spectrogram(wave, fftSampleSize, overlapFactor);
+                time += System.nanoTime() - timeBefore;
+                allocated += getAllocatedBytes() - allocatedBefore;
+            }
+
+            long overlappedCopy = overlapFactor > 1 ? 2L * numSamples
+                    * overlapFactor : 0;
+            System.out.println("overlap factor " + overlapFactor + ": "
+                    + allocated / numRuns / 1024 + " KB allocated, "
+                    + time / numRuns / 1000000 + " ms, overlapped copy avoided "
+                    + overlappedCopy / 1024 + " KB");
+        }
+    }
+
+    // bytes allocated by this thread so far, -1 if the JVM does not tell
+    private static long getAllocatedBytes() {
+        java.lang.management.ThreadMXBean threadBean = ManagementFactory
+                .getThreadMXBean();
+        if (threadBean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threadBean)
+                    .getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2012 Jacquet Wong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.musicg.main.demo;
+
+import java.io.IOException;
+
+import com.musicg.api.WhistleApi;
+import com.musicg.dsp.SlidingDft;
+import com.musicg.wave.Wave;
+
+/**
+ * Feeds the amplitudes of a wave one by one to a sliding DFT and checks for a
+ * whistle at every hop, the way a live stream would be monitored.
+ *
+ * @author Jacquet Wong
+ */
+public class StreamingWhistleDemo {
+
+    /**
+     * @param args
+     *            optional WAV file name
+     * @throws IOException
+     */
+    public static void main(String[] args) throws IOException {
+
+        String filename = args.length > 0 ? args[0] : "audio_work/whistle.wav";
+        int fftSampleSize = 1024;
+        int hopSize = 256;
+
+        Wave wave = new Wave(filename);
+        short[] amplitudes = wave.getSampleAmplitudes();
+
+        WhistleApi whistleApi = new WhistleApi(wave.getWaveHeader());
+        SlidingDft slidingDft = whistleApi.createSlidingDft(fftSampleSize);
+        System.out.println(filename + ": " + slidingDft.getNumBins()
+                + " bins updated per sample");
+
+        int numHops = 0;
+        int numWhistles = 0;
+        long time = System.nanoTime();
+        for (int i = 0; i < amplitudes.length; i++) {
+            slidingDft.add(amplitudes[i]);
+            if ((i + 1) % hopSize == 0 && slidingDft.isFull()) {
+                numHops++;
+                if (whistleApi.isWhistle(slidingDft)) {
+                    numWhistles++;
+                }
+            }
+        }
+        time = System.nanoTime() - time;
+
+        System.out.println(numWhistles + " of " + numHops
+                + " hops are whistles, " + time / amplitudes.length
+                + " ns per sample");
+    }
+}
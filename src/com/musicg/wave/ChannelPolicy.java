@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2011 Jacquet Wong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.musicg.wave;
+
+/**
+ * How the channels of a multichannel wave are decoded: averaged into one
+ * signal, a single channel picked, or every channel decoded into its own
+ * signal. Mono waves give the same amplitudes with any of them.
+ *
+ * @author Jacquet Wong
+ */
+public final class ChannelPolicy {
+
+    private static final int DOWNMIX_CHANNELS = -1;
+    private static final int ALL_CHANNELS = -2;
+
+    /**
+     * Average of the channels
+     */
+    public static final ChannelPolicy DOWNMIX = new ChannelPolicy(
+            DOWNMIX_CHANNELS);
+
+    /**
+     * A signal per channel
+     */
+    public static final ChannelPolicy PER_CHANNEL = new ChannelPolicy(
+            ALL_CHANNELS);
+
+    private final int channel;
+
+    private ChannelPolicy(int channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Policy picking a single channel
+     *
+     * @param channel
+     *            channel number, 0 for the left channel of a stereo wave
+     * @return policy decoding the channel only
+     */
+    public static ChannelPolicy channel(int channel) {
+        if (channel < 0) {
+            throw new IllegalArgumentException("Invalid channel: " + channel);
+        }
+        return new ChannelPolicy(channel);
+    }
+
+    /**
+     * @return true if the channels are averaged
+     */
+    public boolean isDownmix() {
+        return channel == DOWNMIX_CHANNELS;
+    }
+
+    /**
+     * @return true if every channel is decoded into its own signal
+     */
+    public boolean isPerChannel() {
+        return channel == ALL_CHANNELS;
+    }
+
+    /**
+     * @return the channel picked, -1 if the policy does not pick a channel
+     */
+    public int getChannel() {
+        return channel >= 0 ? channel : -1;
+    }
+
+    /**
+     * @param numChannels
+     *            number of channels of the wave
+     * @return number of signals decoded from the wave
+     */
+    public int getNumSignals(int numChannels) {
+        return isPerChannel() ? numChannels : 1;
+    }
+
+    @Override
+    public int hashCode() {
+        return channel;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof ChannelPolicy)) {
+            return false;
+        }
+        return channel == ((ChannelPolicy) obj).channel;
+    }
+
+    @Override
+    public String toString() {
+        if (isDownmix()) {
+            return "downmix";
+        }
+        if (isPerChannel()) {
+            return "per channel";
+        }
+        return "channel " + channel;
+    }
+}
@@ -0,0 +1,427 @@
+/*
+ * Copyright (C) 2011 Jacquet Wong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.musicg.wave;
+
+/**
+ * Decodes the little endian sample bytes of a WAV file: 8, 16, 24 and 32 bit
+ * integer PCM and 32 and 64 bit IEEE float, also as the sub format of an
+ * extensible header.
+ *
+ * The decoded amplitudes are in the range of 16 bit amplitudes, which the
+ * spectrogram and detection thresholds are tuned for: 8 and 16 bit samples
+ * keep their values, 24 and 32 bit samples are scaled down and float samples
+ * are scaled up by 32768. Float buffers keep the bits below the 16 bit range
+ * as fractions.
+ *
+ * The channels of a frame are handled by a {@link ChannelPolicy} while the
+ * bytes are read: a downmix averages them and a single channel skips the
+ * others, so no interleaved amplitudes are decoded first.
+ *
+ * @author Jacquet Wong
+ */
+public class SampleDecoder {
+
+    private static final float FLOAT_SCALE = 32768f;
+
+    private final int bytesPerSample;
+    private final boolean floatingPoint;
+    private final int numChannels;
+    private final ChannelPolicy channelPolicy;
+    private final int frameSize; // bytes of the samples of all the channels
+    private final int channelOffset; // bytes before the channel picked
+
+    /**
+     * Constructor, the samples of all the channels are decoded one after the
+     * other, interleaved as in the data
+     *
+     * @param waveHeader
+     *            header describing the samples
+     */
+    public SampleDecoder(WaveHeader waveHeader) {
+        this(waveHeader.getSampleFormat(), waveHeader.getBitsPerSample());
+    }
+
+    /**
+     * Constructor
+     *
+     * @param waveHeader
+     *            header describing the samples
+     * @param channelPolicy
+     *            how the channels of the header are decoded
+     */
+    public SampleDecoder(WaveHeader waveHeader, ChannelPolicy channelPolicy) {
+        this(waveHeader.getSampleFormat(), waveHeader.getBitsPerSample(),
+                waveHeader.getChannels(), channelPolicy);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param audioFormat
+     *            audio format of the header, WaveHeader.FORMAT_PCM,
+     *            FORMAT_IEEE_FLOAT or FORMAT_EXTENSIBLE for integer samples
+     * @param bitsPerSample
+     *            bits per sample
+     */
+    public SampleDecoder(int audioFormat, int bitsPerSample) {
+        this(audioFormat, bitsPerSample, 1, ChannelPolicy.DOWNMIX);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param audioFormat
+     *            audio format of the header, WaveHeader.FORMAT_PCM,
+     *            FORMAT_IEEE_FLOAT or FORMAT_EXTENSIBLE for integer samples
+     * @param bitsPerSample
+     *            bits per sample
+     * @param numChannels
+     *            number of channels interleaved in the data
+     * @param channelPolicy
+     *            how the channels are decoded
+     */
+    public SampleDecoder(int audioFormat, int bitsPerSample, int numChannels,
+            ChannelPolicy channelPolicy) {
+        if (!isSupported(audioFormat, bitsPerSample)) {
+            throw new IllegalArgumentException("Unsupported samples: format "
+                    + audioFormat + ", " + bitsPerSample + " bits");
+        }
+        if (numChannels < 1 || channelPolicy.getChannel() >= numChannels) {
+            throw new IllegalArgumentException("Invalid " + channelPolicy
+                    + " of " + numChannels + " channels");
+        }
+        this.bytesPerSample = bitsPerSample / 8;
+        this.floatingPoint = audioFormat == WaveHeader.FORMAT_IEEE_FLOAT;
+        this.numChannels = numChannels;
+        this.channelPolicy = channelPolicy;
+        this.frameSize = bytesPerSample * numChannels;
+        this.channelOffset = Math.max(channelPolicy.getChannel(), 0)
+                * bytesPerSample;
+    }
+
+    /**
+     * Whether the samples of a header can be decoded
+     *
+     * @param waveHeader
+     *            header describing the samples
+     * @return true for 8 to 32 bit integer and 32 or 64 bit float samples
+     */
+    public static boolean isSupported(WaveHeader waveHeader) {
+        return isSupported(waveHeader.getSampleFormat(),
+                waveHeader.getBitsPerSample());
+    }
+
+    private static boolean isSupported(int audioFormat, int bitsPerSample) {
+        if (audioFormat == WaveHeader.FORMAT_IEEE_FLOAT) {
+            return bitsPerSample == 32 || bitsPerSample == 64;
+        }
+        return bitsPerSample == 8 || bitsPerSample == 16
+                || bitsPerSample == 24 || bitsPerSample == 32;
+    }
+
+    /**
+     * Whether the samples of a header have more than 16 bit, in which case
+     * short amplitudes drop their lowest bits
+     *
+     * @param waveHeader
+     *            header describing the samples
+     * @return true for 24 and 32 bit integer and float samples
+     */
+    public static boolean isHighResolution(WaveHeader waveHeader) {
+        return waveHeader.getSampleFormat() == WaveHeader.FORMAT_IEEE_FLOAT
+                || waveHeader.getBitsPerSample() > 16;
+    }
+
+    /**
+     * @return number of bytes of a sample
+     */
+    public int getBytesPerSample() {
+        return bytesPerSample;
+    }
+
+    /**
+     * @return number of bytes of a frame, the samples of all the channels
+     */
+    public int getFrameSize() {
+        return frameSize;
+    }
+
+    /**
+     * @return the channel policy
+     */
+    public ChannelPolicy getChannelPolicy() {
+        return channelPolicy;
+    }
+
+    /**
+     * @return number of signals decoded, the number of channels for the per
+     *         channel policy, 1 otherwise
+     */
+    public int getNumSignals() {
+        return channelPolicy.getNumSignals(numChannels);
+    }
+
+    /**
+     * @param numBytes
+     *            number of sample bytes
+     * @return number of amplitudes of a signal in the bytes, one per frame of
+     *         whole samples of all the channels
+     */
+    public int getNumSamples(int numBytes) {
+        return numBytes / frameSize;
+    }
+
+    /**
+     * Decode samples into floats
+     *
+     * @param data
+     *            sample bytes
+     * @param offset
+     *            position of the first byte to decode
+     * @param numSamples
+     *            number of amplitudes to decode
+     * @param amplitudes
+     *            destination of the amplitudes
+     * @param amplitudesOffset
+     *            position of the first amplitude
+     * @throws IllegalStateException
+     *             if every channel is decoded into its own signal
+     */
+    public void decode(byte[] data, int offset, int numSamples,
+            float[] amplitudes, int amplitudesOffset) {
+        checkSingleSignal();
+        int pointer = offset + channelOffset;
+        if (numChannels == 1 || !channelPolicy.isDownmix()) {
+            for (int i = 0; i < numSamples; i++) {
+                amplitudes[amplitudesOffset + i] = decodeFloat(data, pointer);
+                pointer += frameSize;
+            }
+        } else {
+            float scale = 1f / numChannels;
+            for (int i = 0; i < numSamples; i++) {
+                float sum = 0;
+                for (int c = 0; c < numChannels; c++) {
+                    sum += decodeFloat(data, pointer + c * bytesPerSample);
+                }
+                amplitudes[amplitudesOffset + i] = sum * scale;
+                pointer += frameSize;
+            }
+        }
+    }
+
+    /**
+     * Decode samples into shorts, samples of more than 16 bit keep their
+     * highest 16 bit
+     *
+     * @param data
+     *            sample bytes
+     * @param offset
+     *            position of the first byte to decode
+     * @param numSamples
+     *            number of amplitudes to decode
+     * @param amplitudes
+     *            destination of the amplitudes
+     * @param amplitudesOffset
+     *            position of the first amplitude
+     * @throws IllegalStateException
+     *             if every channel is decoded into its own signal
+     */
+    public void decode(byte[] data, int offset, int numSamples,
+            short[] amplitudes, int amplitudesOffset) {
+        checkSingleSignal();
+        int pointer = offset + channelOffset;
+        if (numChannels == 1 || !channelPolicy.isDownmix()) {
+            for (int i = 0; i < numSamples; i++) {
+                amplitudes[amplitudesOffset + i] = decodeShort(data, pointer);
+                pointer += frameSize;
+            }
+        } else {
+            for (int i = 0; i < numSamples; i++) {
+                int sum = 0;
+                for (int c = 0; c < numChannels; c++) {
+                    sum += decodeShort(data, pointer + c * bytesPerSample);
+                }
+                amplitudes[amplitudesOffset + i] = (short) (sum / numChannels);
+                pointer += frameSize;
+            }
+        }
+    }
+
+    /**
+     * Decode samples into a float array per signal
+     *
+     * @param data
+     *            sample bytes
+     * @param offset
+     *            position of the first byte to decode
+     * @param numSamples
+     *            number of amplitudes to decode in each signal
+     * @param amplitudes
+     *            destination of the amplitudes, getNumSignals() arrays
+     * @param amplitudesOffset
+     *            position of the first amplitude in the arrays
+     */
+    public void decode(byte[] data, int offset, int numSamples,
+            float[][] amplitudes, int amplitudesOffset) {
+        if (!channelPolicy.isPerChannel()) {
+            decode(data, offset, numSamples, amplitudes[0], amplitudesOffset);
+            return;
+        }
+        int pointer = offset;
+        for (int i = 0; i < numSamples; i++) {
+            for (int c = 0; c < numChannels; c++) {
+                amplitudes[c][amplitudesOffset + i] = decodeFloat(data,
+                        pointer);
+                pointer += bytesPerSample;
+            }
+        }
+    }
+
+    /**
+     * Decode samples into a short array per signal
+     *
+     * @param data
+     *            sample bytes
+     * @param offset
+     *            position of the first byte to decode
+     * @param numSamples
+     *            number of amplitudes to decode in each signal
+     * @param amplitudes
+     *            destination of the amplitudes, getNumSignals() arrays
+     * @param amplitudesOffset
+     *            position of the first amplitude in the arrays
+     */
+    public void decode(byte[] data, int offset, int numSamples,
+            short[][] amplitudes, int amplitudesOffset) {
+        if (!channelPolicy.isPerChannel()) {
+            decode(data, offset, numSamples, amplitudes[0], amplitudesOffset);
+            return;
+        }
+        int pointer = offset;
+        for (int i = 0; i < numSamples; i++) {
+            for (int c = 0; c < numChannels; c++) {
+                amplitudes[c][amplitudesOffset + i] = decodeShort(data,
+                        pointer);
+                pointer += bytesPerSample;
+            }
+        }
+    }
+
+    /**
+     * Decode all the samples into floats
+     *
+     * @param data
+     *            sample bytes
+     * @return amplitudes
+     * @throws IllegalStateException
+     *             if every channel is decoded into its own signal
+     */
+    public float[] decodeFloats(byte[] data) {
+        float[] amplitudes = new float[getNumSamples(data.length)];
+        decode(data, 0, amplitudes.length, amplitudes, 0);
+        return amplitudes;
+    }
+
+    /**
+     * Decode all the samples into shorts
+     *
+     * @param data
+     *            sample bytes
+     * @return amplitudes
+     * @throws IllegalStateException
+     *             if every channel is decoded into its own signal
+     */
+    public short[] decodeShorts(byte[] data) {
+        short[] amplitudes = new short[getNumSamples(data.length)];
+        decode(data, 0, amplitudes.length, amplitudes, 0);
+        return amplitudes;
+    }
+
+    /**
+     * Decode all the samples into a float array per signal
+     *
+     * @param data
+     *            sample bytes
+     * @return amplitudes[signal][sampleNumber]
+     */
+    public float[][] decodeFloatSignals(byte[] data) {
+        int numSamples = getNumSamples(data.length);
+        float[][] amplitudes = new float[getNumSignals()][numSamples];
+        decode(data, 0, numSamples, amplitudes, 0);
+        return amplitudes;
+    }
+
+    private void checkSingleSignal() {
+        if (channelPolicy.isPerChannel() && numChannels > 1) {
+            throw new IllegalStateException(
+                    "Decoding per channel needs an array per channel");
+        }
+    }
+
+    private float decodeFloat(byte[] data, int pointer) {
+        if (floatingPoint) {
+            if (bytesPerSample == 4) {
+                return Float.intBitsToFloat(readInt(data, pointer))
+                        * FLOAT_SCALE;
+            }
+            long bits = (readInt(data, pointer) & 0xFFFFFFFFL)
+                    | (long) readInt(data, pointer + 4) << 32;
+            return (float) (Double.longBitsToDouble(bits) * FLOAT_SCALE);
+        }
+
+        switch (bytesPerSample) {
+        case 1:
+            // unsigned, kept as it is like the short amplitudes
+            return data[pointer] & 0xFF;
+        case 2:
+            return (short) ((data[pointer] & 0xFF) | data[pointer + 1] << 8);
+        case 3:
+            return ((data[pointer] & 0xFF) | (data[pointer + 1] & 0xFF) << 8
+                    | data[pointer + 2] << 16) / 256f;
+        default:
+            return readInt(data, pointer) / 65536f;
+        }
+    }
+
+    private short decodeShort(byte[] data, int pointer) {
+        if (floatingPoint) {
+            float amplitude = decodeFloat(data, pointer);
+            if (amplitude >= Short.MAX_VALUE) {
+                return Short.MAX_VALUE;
+            }
+            if (amplitude <= Short.MIN_VALUE) {
+                return Short.MIN_VALUE;
+            }
+            return (short) Math.round(amplitude);
+        }
+
+        // little endian, the highest 2 bytes of the sample
+        switch (bytesPerSample) {
+        case 1:
+            return (short) (data[pointer] & 0xFF);
+        default:
+            int last = pointer + bytesPerSample - 1;
+            return (short) ((data[last - 1] & 0xFF) | data[last] << 8);
+        }
+    }
+
+    // little endian
+    private static int readInt(byte[] data, int pointer) {
+        return (data[pointer] & 0xFF) | (data[pointer + 1] & 0xFF) << 8
+                | (data[pointer + 2] & 0xFF) << 16 | data[pointer + 3] << 24;
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2011 Jacquet Wong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.musicg.wave;
+
+import java.io.IOException;
+
+/**
+ * A signal read block by block, e.g. the samples of a {@link WaveReader} or
+ * a resampling of them
+ *
+ * @author Jacquet Wong
+ */
+public interface SampleSource {
+
+    /**
+     * @return sample rate of the signal
+     */
+    int getSampleRate();
+
+    /**
+     * Read amplitudes in single precision
+     *
+     * @param amplitudes
+     *            destination of the amplitudes
+     * @param offset
+     *            position of the first amplitude
+     * @param length
+     *            max. number of amplitudes to read
+     * @return number of amplitudes read, -1 at the end of the signal
+     * @throws IOException
+     *             IO exception
+     */
+    int read(float[] amplitudes, int offset, int length) throws IOException;
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright (C) 2011 Jacquet Wong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.musicg.wave;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import com.musicg.api.DetectionApi;
+
+/**
+ * Detects a type of sound in a stream of frames, e.g. from a
+ * {@link WaveReader} or a live capture. Every frame is checked by a
+ * detection api and a frame passes the vote when at least passScore of the
+ * last windowLength frames contain the sound. The probability is the part
+ * of the frames that passed.
+ *
+ * The results of the window are kept as bits of a circular buffer with a
+ * running count, so a frame costs the same whatever the window length.
+ * Listeners are told the probability after every frame, and the onsets and
+ * offsets of the sound.
+ *
+ * @author Jacquet Wong
+ */
+public class StreamingWaveTypeDetector {
+
+    /**
+     * Default number of frames voting
+     */
+    public static final int DEFAULT_WINDOW_LENGTH = 3;
+
+    /**
+     * Default number of frames of the window needed to pass
+     */
+    public static final int DEFAULT_PASS_SCORE = 3;
+
+    private final DetectionApi detectionApi;
+    private final int windowLength;
+    private final int passScore;
+    private final long[] window; // results of the last frames, a bit each
+    private final List<WaveTypeListener> listeners;
+    private int count; // results set in the window
+    private long numFrames;
+    private long numPasses;
+    private boolean passed; // the last frame passed
+
+    /**
+     * Constructor, with the default window
+     *
+     * @param detectionApi
+     *            api checking the frames, e.g. a WhistleApi
+     */
+    public StreamingWaveTypeDetector(DetectionApi detectionApi) {
+        this(detectionApi, DEFAULT_WINDOW_LENGTH, DEFAULT_PASS_SCORE);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param detectionApi
+     *            api checking the frames, null if only results are added
+     * @param windowLength
+     *            number of frames voting
+     * @param passScore
+     *            number of frames of the window needed to pass
+     */
+    public StreamingWaveTypeDetector(DetectionApi detectionApi,
+            int windowLength, int passScore) {
+        if (windowLength < 1 || passScore < 1 || passScore > windowLength) {
+            throw new IllegalArgumentException("Invalid pass score "
+                    + passScore + " for a window of " + windowLength);
+        }
+        this.detectionApi = detectionApi;
+        this.windowLength = windowLength;
+        this.passScore = passScore;
+        this.window = new long[(windowLength + 63) / 64];
+        this.listeners = new CopyOnWriteArrayList<WaveTypeListener>();
+    }
+
+    /**
+     * @param listener
+     *            listener of the updates, called by the thread adding frames
+     */
+    public void addListener(WaveTypeListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * @param listener
+     *            the listener to remove
+     */
+    public void removeListener(WaveTypeListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Check the next frame
+     *
+     * @param audioBytes
+     *            audio bytes of the frame, a number of samples to power of 2
+     * @return true if the frame passed the vote
+     */
+    public boolean addFrame(byte[] audioBytes) {
+        return addResult(detectionApi.isSpecificSound(audioBytes));
+    }
+
+    /**
+     * Check the next frame
+     *
+     * @param amplitudes
+     *            amplitudes of the frame, a number of them to power of 2
+     * @return true if the frame passed the vote
+     */
+    public boolean addFrame(short[] amplitudes) {
+        return addResult(detectionApi.isSpecificSound(amplitudes));
+    }
+
+    /**
+     * Add the result of the next frame, checked elsewhere, e.g. by a capture
+     * pipeline
+     *
+     * @param detected
+     *            true if the frame contains the sound
+     * @return true if the frame passed the vote
+     */
+    public boolean addResult(boolean detected) {
+        long frameNumber = numFrames;
+
+        // the result of the frame replaces the one windowLength frames ago
+        int index = (int) (frameNumber % windowLength);
+        long bit = 1L << index;
+        boolean dropped = (window[index >> 6] & bit) != 0;
+        if (dropped != detected) {
+            window[index >> 6] ^= bit;
+            count += detected ? 1 : -1;
+        }
+        numFrames++;
+
+        boolean pass = count >= passScore;
+        if (pass) {
+            numPasses++;
+        }
+
+        if (!listeners.isEmpty()) {
+            if (pass != passed) {
+                for (WaveTypeListener listener : listeners) {
+                    if (pass) {
+                        listener.onOnset(frameNumber);
+                    } else {
+                        listener.onOffset(frameNumber);
+                    }
+                }
+            }
+            double probability = getProbability();
+            for (WaveTypeListener listener : listeners) {
+                listener.onProbability(frameNumber, probability);
+            }
+        }
+        passed = pass;
+        return pass;
+    }
+
+    /**
+     * Forget the frames added
+     */
+    public void reset() {
+        for (int i = 0; i < window.length; i++) {
+            window[i] = 0;
+        }
+        count = 0;
+        numFrames = 0;
+        numPasses = 0;
+        passed = false;
+    }
+
+    /**
+     * @return part of the frames that passed the vote, 0 before the first
+     *         frame
+     */
+    public double getProbability() {
+        return numFrames == 0 ? 0 : (double) numPasses / numFrames;
+    }
+
+    /**
+     * @return true if the last frame passed the vote
+     */
+    public boolean isDetected() {
+        return passed;
+    }
+
+    /**
+     * @return number of frames of the window containing the sound
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * @return number of frames added
+     */
+    public long getFrameCount() {
+        return numFrames;
+    }
+
+    /**
+     * @return number of frames that passed the vote
+     */
+    public long getPassCount() {
+        return numPasses;
+    }
+
+    /**
+     * @return number of frames voting
+     */
+    public int getWindowLength() {
+        return windowLength;
+    }
+
+    /**
+     * @return number of frames of the window needed to pass
+     */
+    public int getPassScore() {
+        return passScore;
+    }
+}
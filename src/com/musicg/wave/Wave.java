@@ -23,17 +23,31 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.OutputStream;
+import java.io.RandomAccessFile;
 import java.io.Serializable;
+import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.knime.core.util.FileUtil;
 
 import com.musicg.fingerprint.FingerprintManager;
 import com.musicg.fingerprint.FingerprintSimilarity;
 import com.musicg.fingerprint.FingerprintSimilarityComputer;
+import com.musicg.wave.extension.FloatSpectrogram;
+import com.musicg.wave.extension.LazySpectrogram;
 import com.musicg.wave.extension.NormalizedSampleAmplitudes;
 import com.musicg.wave.extension.Spectrogram;
+import com.musicg.wave.extension.SpectrogramCache;
+import com.musicg.wave.extension.SpectrogramSettings;
 
 /**
  * @author Jacquet Wong
@@ -43,8 +57,16 @@ public class Wave implements Serializable {
 
     private static final long serialVersionUID = 1L;
     private WaveHeader m_waveHeader;
-    private byte[] m_data; // little endian
+    private byte[] m_data; // little endian, null while the data is a view
+    private transient WaveData m_dataView; // mapped data or part of an array
     private byte[] fingerprint;
+    // decoded amplitudes by type and channel policy, until the data changes
+    // or the garbage collector needs the memory
+    private transient Map<DecodeKey, SoftReference<Object>> m_decoded;
+    private transient int m_dataVersion; // changes with the data
+
+    // bytes decoded at a time from mapped data
+    private static final int DECODE_BLOCK_SIZE = 1 << 16;
 
     /**
      * Constructor.
@@ -63,20 +85,10 @@ public class Wave implements Serializable {
      */
     public Wave(String filename) throws IOException {
         FileInputStream inputStream = new FileInputStream(filename);
-        initWaveWithFileInputStream(inputStream);
+        initWaveWithInputStream(inputStream);
         inputStream.close();
     }
 
-    private void initWaveWithFileInputStream(FileInputStream in)
-            throws IOException {
-        this.m_waveHeader = new WaveHeader(in);
-        if (this.m_waveHeader.isValid()) {
-            this.m_data = new byte[in.available()];
-            in.read(this.m_data);
-        }
-
-    }
-
     /**
      * Constructor.
      * 
@@ -116,19 +128,62 @@ public class Wave implements Serializable {
         is.close();
     }
 
+    /**
+     * Constructor with {@link File}, the data chunk can be mapped in memory
+     * instead of being loaded. A mapped wave opens at once whatever its size,
+     * its samples are decoded from the page cache when they are requested.
+     * 
+     * @param f
+     *            the file to load into the WAV object
+     * @param mapped
+     *            true to map the data chunk, false to load it as
+     *            {@link #Wave(File)} does
+     * @throws IOException
+     *             IO exception
+     */
+    public Wave(File f, boolean mapped) throws IOException {
+        if (!mapped) {
+            InputStream is = new FileInputStream(f);
+            initWaveWithInputStream(is);
+            is.close();
+            return;
+        }
+
+        RandomAccessFile file = new RandomAccessFile(f, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            this.m_waveHeader = new WaveHeader(channel);
+            long offset = this.m_waveHeader.getDataOffset();
+            long size = Math.max(channel.size() - offset, 0);
+            long dataSize = this.m_waveHeader.getDataLength();
+            if (dataSize >= 0) {
+                size = Math.min(size, dataSize);
+            }
+            this.m_dataView = new WaveData(f, channel, offset, size,
+                    this.m_waveHeader.getBlockAlign());
+        } finally {
+            file.close();
+        }
+    }
+
     private void initWaveWithInputStream(InputStream in) throws IOException {
 
+        // the header chunks are walked up to the data
+        this.m_waveHeader = new WaveHeader(in);
+
         ByteArrayOutputStream out = new ByteArrayOutputStream();
-        FileUtil.copy(in, out);
+        if (this.m_waveHeader.isValid()) {
+            FileUtil.copy(in, out);
+        }
         out.close();
 
-        byte[] buffer = out.toByteArray();
+        this.m_data = out.toByteArray();
 
-        this.m_waveHeader = new WaveHeader(Arrays.copyOf(buffer,
-                WaveHeader.HEADER_BYTE_LENGTH));
-
-        this.m_data = Arrays.copyOfRange(buffer, WaveHeader.HEADER_BYTE_LENGTH,
-                buffer.length);
+        // chunks after the data are not samples
+        long dataSize = this.m_waveHeader.getDataLength();
+        if (dataSize >= 0 && dataSize < this.m_data.length) {
+            this.m_data = Arrays.copyOf(this.m_data, (int) dataSize);
+        }
 
     }
 
@@ -144,12 +199,15 @@ public class Wave implements Serializable {
     }
 
     /**
-     * Get the wave spectrogram
+     * Get the wave spectrogram. The spectrograms of the Wave getters are
+     * kept in {@link SpectrogramCache#getDefault()}, within its byte budget,
+     * and shared by the calls with the same settings until the data changes,
+     * their data must not be modified.
      * 
      * @return spectrogram
      */
     public Spectrogram getSpectrogram() {
-        return new Spectrogram(this);
+        return getSpectrogram(new SpectrogramSettings());
     }
 
     /**
@@ -165,7 +223,83 @@ public class Wave implements Serializable {
      * @return spectrogram
      */
     public Spectrogram getSpectrogram(int fftSampleSize, int overlapFactor) {
-        return new Spectrogram(this, fftSampleSize, overlapFactor);
+        return getSpectrogram(new SpectrogramSettings(fftSampleSize,
+                overlapFactor));
+    }
+
+    /**
+     * Get the wave spectrogram
+     * 
+     * @param settings
+     *            FFT sample size, overlap factor, transform and window of the
+     *            frames
+     * 
+     * @return spectrogram
+     */
+    public Spectrogram getSpectrogram(SpectrogramSettings settings) {
+        return SpectrogramCache.getDefault().getSpectrogram(this, settings);
+    }
+
+    /**
+     * Get the wave spectrogram in single precision
+     * 
+     * @param fftSampleSize
+     *            number of sample in fft, the value needed to be a number to
+     *            power of 2
+     * @param overlapFactor
+     *            1/overlapFactor overlapping, e.g. 1/4=25% overlapping, 0 for
+     *            no overlapping
+     * 
+     * @return spectrogram
+     */
+    public FloatSpectrogram getFloatSpectrogram(int fftSampleSize,
+            int overlapFactor) {
+        return new FloatSpectrogram(this, fftSampleSize, overlapFactor);
+    }
+
+    /**
+     * Get the wave spectrogram in single precision
+     * 
+     * @param settings
+     *            FFT sample size, overlap factor, transform and window of the
+     *            frames
+     * 
+     * @return spectrogram
+     */
+    public FloatSpectrogram getFloatSpectrogram(SpectrogramSettings settings) {
+        return new FloatSpectrogram(this, settings);
+    }
+
+    /**
+     * Get the wave spectrogram, computing the frames on demand
+     * 
+     * @param fftSampleSize
+     *            number of sample in fft, the value needed to be a number to
+     *            power of 2
+     * @param overlapFactor
+     *            1/overlapFactor overlapping, e.g. 1/4=25% overlapping, 0 for
+     *            no overlapping
+     * 
+     * @return spectrogram
+     */
+    public LazySpectrogram getLazySpectrogram(int fftSampleSize,
+            int overlapFactor) {
+        return new LazySpectrogram(this, fftSampleSize, overlapFactor,
+                LazySpectrogram.LAZY_SPECTROGRAM_DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * Get the wave spectrogram, computing the frames on demand
+     * 
+     * @param settings
+     *            FFT sample size, overlap factor, transform and window of the
+     *            frames
+     * 
+     * @return spectrogram
+     */
+    public LazySpectrogram getLazySpectrogram(SpectrogramSettings settings) {
+        return new LazySpectrogram(this, settings,
+                LazySpectrogram.LAZY_SPECTROGRAM_DEFAULT_CACHE_SIZE);
     }
 
     /**
@@ -174,6 +308,11 @@ public class Wave implements Serializable {
      * @return wave data
      */
     public byte[] getBytes() {
+        if (this.m_dataView != null) {
+            // the data is on the heap from now on, a view is copied
+            this.m_data = this.m_dataView.toByteArray();
+            this.m_dataView = null;
+        }
         return this.m_data;
     }
 
@@ -183,7 +322,79 @@ public class Wave implements Serializable {
      * @return byte size of the wave
      */
     public int size() {
-        return this.m_data.length;
+        long size = getDataSize();
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalStateException("The data of " + size
+                    + " bytes does not fit in an int, see getDataSize()");
+        }
+        return (int) size;
+    }
+
+    /**
+     * Data byte size of the wave excluding header size, mapped data can be
+     * larger than 2GB
+     * 
+     * @return byte size of the wave
+     */
+    public long getDataSize() {
+        return this.m_dataView != null ? this.m_dataView.size()
+                : this.m_data.length;
+    }
+
+    /**
+     * @return true if the data is mapped in memory rather than loaded
+     */
+    public boolean isMapped() {
+        return this.m_dataView != null && this.m_dataView.isMapped();
+    }
+
+    /**
+     * Get a part of the wave, sharing the data of this wave instead of
+     * copying it. The header of the part is a canonical one with the sizes
+     * of the part.
+     * 
+     * @param startFrame
+     *            first sample frame of the part, a frame has the samples of
+     *            all the channels
+     * @param numFrames
+     *            number of sample frames of the part
+     * @return the part of the wave
+     */
+    public Wave getClip(long startFrame, long numFrames) {
+        long frameSize = getFrameSize();
+        WaveHeader header = new WaveHeader(this.m_waveHeader.getBytes());
+        header.setSubChunk2Size(numFrames * frameSize);
+        header.setChunkSize(numFrames * frameSize
+                + WaveHeader.HEADER_BYTE_LENGTH - 8);
+
+        Wave clip = new Wave(header, null);
+        clip.m_dataView = getDataView().slice(startFrame * frameSize,
+                numFrames * frameSize);
+        return clip;
+    }
+
+    // keep a part of the data, without copying it
+    void setDataRange(long position, long length) {
+        this.m_dataView = getDataView().slice(position, length);
+        this.m_data = null;
+        clearSampleCache();
+    }
+
+    private WaveData getDataView() {
+        return this.m_dataView != null ? this.m_dataView : new WaveData(
+                this.m_data);
+    }
+
+    /**
+     * @return bytes of a sample frame, the samples of all the channels
+     */
+    int getFrameSize() {
+        int blockAlign = this.m_waveHeader.getBlockAlign();
+        if (blockAlign > 0) {
+            return blockAlign;
+        }
+        return Math.max(this.m_waveHeader.getBitsPerSample() / 8
+                * this.m_waveHeader.getChannels(), 1);
     }
 
     /**
@@ -221,11 +432,44 @@ public class Wave implements Serializable {
     }
 
     /**
-     * Get the amplitudes of the wave samples (depends on the header)
+     * Get the amplitudes of the wave samples (depends on the header), the
+     * samples of a multichannel wave stay interleaved
      * 
      * @return amplitudes array (signed 16-bit)
      */
     public short[] getSampleAmplitudes() {
+        return getSharedSampleAmplitudes(null).clone();
+    }
+
+    /**
+     * Get the amplitudes of the wave samples without copying them. They are
+     * decoded once and shared by the calls until the data changes, so the
+     * array must not be modified.
+     * 
+     * @param channelPolicy
+     *            ChannelPolicy.DOWNMIX or a single channel, null for the
+     *            interleaved samples
+     * @return amplitudes array (signed 16-bit)
+     */
+    public short[] getSharedSampleAmplitudes(ChannelPolicy channelPolicy) {
+        DecodeKey key = getDecodeKey(short[].class, channelPolicy);
+        short[] amplitudes = (short[]) getDecoded(key);
+        if (amplitudes == null) {
+            amplitudes = channelPolicy == null ? decodeSampleAmplitudes()
+                    : decodeShorts(new SampleDecoder(this.m_waveHeader,
+                            channelPolicy));
+            putDecoded(key, amplitudes);
+        }
+        return amplitudes;
+    }
+
+    private short[] decodeSampleAmplitudes() {
+        if (SampleDecoder.isHighResolution(this.m_waveHeader)
+                || this.m_dataView != null) {
+            // highest 16 bit of each sample
+            return decodeShorts(new SampleDecoder(this.m_waveHeader));
+        }
+
         int bytePerSample = this.m_waveHeader.getBitsPerSample() / 8;
         int numSamples = this.m_data.length / bytePerSample;
         short[] amplitudes = new short[numSamples];
@@ -243,6 +487,222 @@ public class Wave implements Serializable {
         return amplitudes;
     }
 
+    /**
+     * Get the amplitudes in single precision, in the range of 16 bit
+     * amplitudes. Unlike getSampleAmplitudes, 24 bit, 32 bit and float
+     * samples keep their lowest bits as fractions.
+     * 
+     * @return amplitudes: amplitudes[sampleNumber]=amplitude
+     */
+    public float[] getFloatSampleAmplitudes() {
+        return getSharedFloatSampleAmplitudes(null).clone();
+    }
+
+    /**
+     * Get the amplitudes in single precision without copying them, see
+     * getSharedSampleAmplitudes(ChannelPolicy). The array must not be
+     * modified.
+     * 
+     * @param channelPolicy
+     *            ChannelPolicy.DOWNMIX or a single channel, null for the
+     *            interleaved samples
+     * @return amplitudes: amplitudes[sampleNumber]=amplitude
+     */
+    public float[] getSharedFloatSampleAmplitudes(ChannelPolicy channelPolicy) {
+        DecodeKey key = getDecodeKey(float[].class, channelPolicy);
+        float[] amplitudes = (float[]) getDecoded(key);
+        if (amplitudes == null) {
+            SampleDecoder decoder = channelPolicy == null ? new SampleDecoder(
+                    this.m_waveHeader) : new SampleDecoder(this.m_waveHeader,
+                    channelPolicy);
+            amplitudes = decodeFloats(decoder);
+            putDecoded(key, amplitudes);
+        }
+        return amplitudes;
+    }
+
+    /**
+     * Get the amplitudes of a signal of the wave, the channels downmixed in
+     * the same pass as the samples are decoded or a single one of them
+     * 
+     * @param channelPolicy
+     *            ChannelPolicy.DOWNMIX or a single channel
+     * @return amplitudes array (signed 16-bit)
+     */
+    public short[] getSampleAmplitudes(ChannelPolicy channelPolicy) {
+        return getSharedSampleAmplitudes(channelPolicy).clone();
+    }
+
+    /**
+     * Get the amplitudes of a signal of the wave in single precision, see
+     * getFloatSampleAmplitudes()
+     * 
+     * @param channelPolicy
+     *            ChannelPolicy.DOWNMIX or a single channel
+     * @return amplitudes: amplitudes[sampleNumber]=amplitude
+     */
+    public float[] getFloatSampleAmplitudes(ChannelPolicy channelPolicy) {
+        return getSharedFloatSampleAmplitudes(channelPolicy).clone();
+    }
+
+    /**
+     * Get the amplitudes of every channel in single precision
+     * 
+     * @return amplitudes: amplitudes[channel][sampleNumber]=amplitude
+     */
+    public float[][] getChannelAmplitudes() {
+        DecodeKey key = getDecodeKey(float[][].class,
+                ChannelPolicy.PER_CHANNEL);
+        float[][] amplitudes = (float[][]) getDecoded(key);
+        if (amplitudes == null) {
+            amplitudes = decodeChannels();
+            putDecoded(key, amplitudes);
+        }
+        float[][] copy = new float[amplitudes.length][];
+        for (int i = 0; i < amplitudes.length; i++) {
+            copy[i] = amplitudes[i].clone();
+        }
+        return copy;
+    }
+
+    private float[][] decodeChannels() {
+        SampleDecoder decoder = new SampleDecoder(this.m_waveHeader,
+                ChannelPolicy.PER_CHANNEL);
+        if (this.m_dataView == null) {
+            return decoder.decodeFloatSignals(this.m_data);
+        }
+
+        int numSamples = getNumSamples(decoder);
+        float[][] amplitudes = new float[decoder.getNumSignals()][numSamples];
+        byte[] array = this.m_dataView.array();
+        if (array != null) {
+            decoder.decode(array, this.m_dataView.arrayOffset(), numSamples,
+                    amplitudes, 0);
+            return amplitudes;
+        }
+        byte[] block = new byte[getDecodeBlockSize(decoder)];
+        int blockSamples = block.length / decoder.getFrameSize();
+        for (int i = 0; i < numSamples; i += blockSamples) {
+            int n = Math.min(blockSamples, numSamples - i);
+            this.m_dataView.get((long) i * decoder.getFrameSize(), block, 0,
+                    n * decoder.getFrameSize());
+            decoder.decode(block, 0, n, amplitudes, i);
+        }
+        return amplitudes;
+    }
+
+    // a view of an array is decoded in place, mapped data block by block,
+    // neither is copied whole
+    private short[] decodeShorts(SampleDecoder decoder) {
+        if (this.m_dataView == null) {
+            return decoder.decodeShorts(this.m_data);
+        }
+
+        int numSamples = getNumSamples(decoder);
+        short[] amplitudes = new short[numSamples];
+        byte[] array = this.m_dataView.array();
+        if (array != null) {
+            decoder.decode(array, this.m_dataView.arrayOffset(), numSamples,
+                    amplitudes, 0);
+            return amplitudes;
+        }
+        byte[] block = new byte[getDecodeBlockSize(decoder)];
+        int blockSamples = block.length / decoder.getFrameSize();
+        for (int i = 0; i < numSamples; i += blockSamples) {
+            int n = Math.min(blockSamples, numSamples - i);
+            this.m_dataView.get((long) i * decoder.getFrameSize(), block, 0,
+                    n * decoder.getFrameSize());
+            decoder.decode(block, 0, n, amplitudes, i);
+        }
+        return amplitudes;
+    }
+
+    private float[] decodeFloats(SampleDecoder decoder) {
+        if (this.m_dataView == null) {
+            return decoder.decodeFloats(this.m_data);
+        }
+
+        int numSamples = getNumSamples(decoder);
+        float[] amplitudes = new float[numSamples];
+        byte[] array = this.m_dataView.array();
+        if (array != null) {
+            decoder.decode(array, this.m_dataView.arrayOffset(), numSamples,
+                    amplitudes, 0);
+            return amplitudes;
+        }
+        byte[] block = new byte[getDecodeBlockSize(decoder)];
+        int blockSamples = block.length / decoder.getFrameSize();
+        for (int i = 0; i < numSamples; i += blockSamples) {
+            int n = Math.min(blockSamples, numSamples - i);
+            this.m_dataView.get((long) i * decoder.getFrameSize(), block, 0,
+                    n * decoder.getFrameSize());
+            decoder.decode(block, 0, n, amplitudes, i);
+        }
+        return amplitudes;
+    }
+
+    private int getNumSamples(SampleDecoder decoder) {
+        long numSamples = this.m_dataView.size() / decoder.getFrameSize();
+        if (numSamples > Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException(numSamples
+                    + " samples do not fit in an array");
+        }
+        return (int) numSamples;
+    }
+
+    private static int getDecodeBlockSize(SampleDecoder decoder) {
+        int frameSize = decoder.getFrameSize();
+        return Math.max(DECODE_BLOCK_SIZE / frameSize, 1) * frameSize;
+    }
+
+    // the samples of a mono wave are the same interleaved, downmixed or as
+    // its only channel, so they are decoded once for all of them
+    private DecodeKey getDecodeKey(Class<?> type, ChannelPolicy channelPolicy) {
+        if (channelPolicy != null && !channelPolicy.isPerChannel()
+                && this.m_waveHeader.getChannels() == 1) {
+            channelPolicy = null;
+        }
+        return new DecodeKey(type, channelPolicy);
+    }
+
+    private synchronized Object getDecoded(DecodeKey key) {
+        if (this.m_decoded == null) {
+            return null;
+        }
+        SoftReference<Object> reference = this.m_decoded.get(key);
+        return reference != null ? reference.get() : null;
+    }
+
+    private synchronized void putDecoded(DecodeKey key, Object amplitudes) {
+        if (this.m_decoded == null) {
+            this.m_decoded = new HashMap<DecodeKey, SoftReference<Object>>();
+        }
+        this.m_decoded.put(key, new SoftReference<Object>(amplitudes));
+    }
+
+    /**
+     * Drop the decoded amplitudes, the fingerprint and the cached
+     * spectrograms, they are computed again on the next request. Done by
+     * setBytes, to be called after the bytes of getBytes() or the header are
+     * modified in place.
+     */
+    public void clearSampleCache() {
+        synchronized (this) {
+            this.m_decoded = null;
+            this.fingerprint = null;
+            this.m_dataVersion++;
+        }
+        SpectrogramCache.getDefault().remove(this);
+    }
+
+    /**
+     * @return version of the data, changed by clearSampleCache() so that the
+     *         results computed from former data are not reused
+     */
+    public synchronized int getDataVersion() {
+        return this.m_dataVersion;
+    }
+
     @Override
     public String toString() {
         StringBuffer sb = new StringBuffer(this.m_waveHeader.toString());
@@ -255,9 +715,15 @@ public class Wave implements Serializable {
      * @return
      */
     public double[] getNormalizedAmplitudes() {
-        NormalizedSampleAmplitudes amplitudes = new NormalizedSampleAmplitudes(
-                this);
-        return amplitudes.getNormalizedAmplitudes();
+        DecodeKey key = new DecodeKey(double[].class, null);
+        double[] normalizedAmplitudes = (double[]) getDecoded(key);
+        if (normalizedAmplitudes == null) {
+            NormalizedSampleAmplitudes amplitudes;
+            amplitudes = new NormalizedSampleAmplitudes(this);
+            normalizedAmplitudes = amplitudes.getNormalizedAmplitudes();
+            putDecoded(key, normalizedAmplitudes);
+        }
+        return normalizedAmplitudes.clone();
     }
 
     /**
@@ -294,12 +760,13 @@ public class Wave implements Serializable {
 
         FileOutputStream fos = null;
         fos = new FileOutputStream(filename);
-        save(fos);
+        save(fos.getChannel());
         fos.close();
     }
 
     /**
-     * Save the wave file using an output stream
+     * Save the wave file using an output stream, a file output stream is
+     * written through its channel
      * 
      * @param os
      *            the output stream to save the file to
@@ -308,8 +775,86 @@ public class Wave implements Serializable {
      */
     public void save(OutputStream os) throws IOException {
 
+        if (os instanceof FileOutputStream) {
+            save(((FileOutputStream) os).getChannel());
+            return;
+        }
+
         this.m_waveHeader.save(os);
-        os.write(this.getBytes());
+        if (this.m_dataView != null) {
+            this.m_dataView.writeTo(os);
+        } else {
+            os.write(this.getBytes());
+        }
+    }
+
+    /**
+     * Save the wave file to a channel, the header and the data are written
+     * together by a gathering write without copying the data
+     * 
+     * @param channel
+     *            the channel to save the file to
+     * @throws IOException
+     *             IOException
+     */
+    public void save(WritableByteChannel channel) throws IOException {
+        save(channel, false);
+    }
+
+    /**
+     * Save the wave file to a channel
+     * 
+     * @param channel
+     *            the channel to save the file to
+     * @param transfer
+     *            true to transfer mapped data from its file to the channel
+     *            (FileChannel.transferTo), the bytes are not read by the JVM;
+     *            false to write the mapped pages with the header in a
+     *            gathering write. Data loaded on the heap is always written.
+     * @throws IOException
+     *             IOException
+     */
+    public void save(WritableByteChannel channel, boolean transfer)
+            throws IOException {
+
+        ByteBuffer header = ByteBuffer.wrap(this.m_waveHeader.getBytes());
+        if (transfer && isMapped()) {
+            write(channel, new ByteBuffer[] { header });
+            this.m_dataView.transferTo(channel);
+            return;
+        }
+
+        ByteBuffer[] data;
+        if (this.m_dataView != null) {
+            data = this.m_dataView.getBuffers();
+        } else {
+            data = new ByteBuffer[] { ByteBuffer.wrap(this.m_data) };
+        }
+        ByteBuffer[] buffers = new ByteBuffer[data.length + 1];
+        buffers[0] = header;
+        System.arraycopy(data, 0, buffers, 1, data.length);
+        write(channel, buffers);
+    }
+
+    // write all the buffers, in as few calls as the channel allows
+    private static void write(WritableByteChannel channel, ByteBuffer[] buffers)
+            throws IOException {
+        if (channel instanceof GatheringByteChannel) {
+            GatheringByteChannel gathering = (GatheringByteChannel) channel;
+            long remaining = 0;
+            for (int i = 0; i < buffers.length; i++) {
+                remaining += buffers[i].remaining();
+            }
+            while (remaining > 0) {
+                remaining -= gathering.write(buffers);
+            }
+            return;
+        }
+        for (int i = 0; i < buffers.length; i++) {
+            while (buffers[i].hasRemaining()) {
+                channel.write(buffers[i]);
+            }
+        }
     }
 
     /**
@@ -333,6 +878,84 @@ public class Wave implements Serializable {
      */
     public void setBytes(byte[] data) {
        m_data = data;
-        
+       m_dataView = null;
+       clearSampleCache();
+    }
+
+    // the data of a view is written after the fields, block by block,
+    // leaving the view as it is
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("m_waveHeader", this.m_waveHeader);
+        fields.put("m_data", this.m_data);
+        fields.put("fingerprint", this.fingerprint);
+        out.writeFields();
+        if (this.m_dataView != null) {
+            out.writeLong(this.m_dataView.size());
+            this.m_dataView.writeTo(out);
+        }
+    }
+
+    // the data of a view is read into an array, or mapped from a temporary
+    // file if it does not fit in one
+    private void readObject(ObjectInputStream in) throws IOException,
+            ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        this.m_waveHeader = (WaveHeader) fields.get("m_waveHeader", null);
+        this.m_data = (byte[]) fields.get("m_data", null);
+        this.fingerprint = (byte[]) fields.get("fingerprint", null);
+        if (this.m_data != null) {
+            return;
+        }
+
+        long size = in.readLong();
+        if (size <= Integer.MAX_VALUE - 8) {
+            this.m_data = new byte[(int) size];
+            in.readFully(this.m_data);
+            return;
+        }
+        File f = File.createTempFile("wave", ".dat");
+        f.deleteOnExit();
+        RandomAccessFile file = new RandomAccessFile(f, "rw");
+        try {
+            byte[] block = new byte[DECODE_BLOCK_SIZE];
+            for (long position = 0; position < size; position += block.length) {
+                int length = (int) Math.min(block.length, size - position);
+                in.readFully(block, 0, length);
+                file.write(block, 0, length);
+            }
+            this.m_dataView = new WaveData(f, file.getChannel(), 0, size,
+                    this.m_waveHeader.getBlockAlign());
+        } finally {
+            file.close();
+        }
+    }
+
+    private static final class DecodeKey {
+
+        private final Class<?> type;
+        private final ChannelPolicy channelPolicy; // null if interleaved
+
+        DecodeKey(Class<?> type, ChannelPolicy channelPolicy) {
+            this.type = type;
+            this.channelPolicy = channelPolicy;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * type.hashCode()
+                    + (channelPolicy != null ? channelPolicy.hashCode() : 0);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof DecodeKey)) {
+                return false;
+            }
+            DecodeKey other = (DecodeKey) obj;
+            return type == other.type
+                    && (channelPolicy == null ? other.channelPolicy == null
+                            : channelPolicy.equals(other.channelPolicy));
+        }
     }
-}
+}
@@ -0,0 +1,279 @@
+/*
+ * Copyright (C) 2011 Jacquet Wong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.musicg.wave;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A view of the data chunk of a WAV file, either mapped in memory or over a
+ * byte array. A mapped file stays in the page cache and is read on demand
+ * instead of being loaded on the heap.
+ *
+ * A mapping is limited to 2GB, so the data is mapped in segments of whole
+ * sample frames and no sample straddles two segments. A part of the data is
+ * viewed by {@link #slice(long, long)} without copying it.
+ *
+ * @author Jacquet Wong
+ */
+final class WaveData {
+
+    private static final int MAX_SEGMENT_SIZE = 1 << 30;
+    private static final int COPY_BLOCK_SIZE = 1 << 16;
+
+    private final ByteBuffer[] segments; // read only, little endian
+    private final int segmentSize; // bytes of every segment but the last
+    private final long start; // position of the view in the segments
+    private final long size;
+    private final File file; // file mapped, null for an array
+    private final long fileOffset; // position of the segments in the file
+
+    /**
+     * Map a part of a file, the mapping stays valid after the channel is
+     * closed
+     *
+     * @param file
+     *            the file, opened again to transfer the data
+     * @param channel
+     *            channel of the file
+     * @param offset
+     *            position of the data in the file
+     * @param size
+     *            number of data bytes
+     * @param frameSize
+     *            bytes of a sample frame, the samples of all the channels
+     * @throws IOException
+     *             IO exception
+     */
+    WaveData(File file, FileChannel channel, long offset, long size,
+            int frameSize) throws IOException {
+        frameSize = Math.max(frameSize, 1);
+        this.segmentSize = MAX_SEGMENT_SIZE / frameSize * frameSize;
+        this.start = 0;
+        this.size = size;
+        this.file = file;
+        this.fileOffset = offset;
+
+        int numSegments = (int) ((size + segmentSize - 1) / segmentSize);
+        segments = new ByteBuffer[numSegments];
+        for (int i = 0; i < numSegments; i++) {
+            long position = (long) i * segmentSize;
+            long length = Math.min(segmentSize, size - position);
+            segments[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+                    offset + position, length).order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+    /**
+     * View the bytes of an array, the array is not copied
+     *
+     * @param bytes
+     *            data bytes
+     */
+    WaveData(byte[] bytes) {
+        this(new ByteBuffer[] { ByteBuffer.wrap(bytes).order(
+                ByteOrder.LITTLE_ENDIAN) }, Integer.MAX_VALUE, 0, bytes.length,
+                null, 0);
+    }
+
+    private WaveData(ByteBuffer[] segments, int segmentSize, long start,
+            long size, File file, long fileOffset) {
+        this.segments = segments;
+        this.segmentSize = segmentSize;
+        this.start = start;
+        this.size = size;
+        this.file = file;
+        this.fileOffset = fileOffset;
+    }
+
+    /**
+     * View a part of the data, sharing its bytes
+     *
+     * @param position
+     *            position of the first byte of the part in this data
+     * @param length
+     *            number of bytes of the part
+     * @return view of the part
+     */
+    WaveData slice(long position, long length) {
+        if (position < 0 || length < 0 || position + length > size) {
+            throw new IllegalArgumentException("Invalid range " + position
+                    + "+" + length + " of " + size + " bytes");
+        }
+        return new WaveData(segments, segmentSize, start + position, length,
+                file, fileOffset);
+    }
+
+    /**
+     * @return number of data bytes
+     */
+    long size() {
+        return size;
+    }
+
+    /**
+     * @return true if the data is mapped from a file
+     */
+    boolean isMapped() {
+        return file != null;
+    }
+
+    /**
+     * @return the array viewed, null if the data is mapped
+     */
+    byte[] array() {
+        return file != null ? null : segments[0].array();
+    }
+
+    /**
+     * @return position of the view in the array
+     */
+    int arrayOffset() {
+        return (int) start;
+    }
+
+    /**
+     * Copy data bytes
+     *
+     * @param position
+     *            position of the first byte in the data
+     * @param bytes
+     *            destination of the bytes
+     * @param offset
+     *            position of the first byte in the destination
+     * @param length
+     *            number of bytes to copy
+     */
+    void get(long position, byte[] bytes, int offset, int length) {
+        position += start;
+        while (length > 0) {
+            int segment = (int) (position / segmentSize);
+            int segmentPosition = (int) (position - (long) segment
+                    * segmentSize);
+            // duplicate, the position of a shared buffer is not thread safe
+            ByteBuffer buffer = segments[segment].duplicate();
+            buffer.position(segmentPosition);
+            int n = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, n);
+            position += n;
+            offset += n;
+            length -= n;
+        }
+    }
+
+    /**
+     * Get buffers over the data, for a gathering write. The bytes are not
+     * copied, the buffers share them.
+     *
+     * @return buffers of the data in order, positioned at its first byte
+     */
+    ByteBuffer[] getBuffers() {
+        if (size == 0) {
+            return new ByteBuffer[0];
+        }
+        int first = (int) (start / segmentSize);
+        int last = (int) ((start + size - 1) / segmentSize);
+        ByteBuffer[] buffers = new ByteBuffer[last - first + 1];
+        for (int i = 0; i < buffers.length; i++) {
+            long segmentStart = (long) (first + i) * segmentSize;
+            ByteBuffer buffer = segments[first + i].duplicate();
+            buffer.limit((int) (Math.min(start + size - segmentStart,
+                    buffer.capacity())));
+            buffer.position((int) Math.max(start - segmentStart, 0));
+            buffers[i] = buffer;
+        }
+        return buffers;
+    }
+
+    /**
+     * Transfer the data from the file mapped to a channel, the bytes go from
+     * the file to the channel in the kernel without being read by the JVM
+     *
+     * @param target
+     *            the channel
+     * @throws IOException
+     *             IO exception
+     * @throws IllegalStateException
+     *             if the data is not mapped
+     */
+    void transferTo(WritableByteChannel target) throws IOException {
+        if (file == null) {
+            throw new IllegalStateException("The data is not mapped");
+        }
+        RandomAccessFile source = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = source.getChannel();
+            long position = fileOffset + start;
+            long transferred = 0;
+            while (transferred < size) {
+                long n = channel.transferTo(position + transferred, size
+                        - transferred, target);
+                if (n <= 0 && channel.size() <= position + transferred) {
+                    throw new IOException("The file " + file
+                            + " is shorter than its mapping");
+                }
+                transferred += n;
+            }
+        } finally {
+            source.close();
+        }
+    }
+
+    /**
+     * Copy all the data on the heap
+     *
+     * @return data bytes
+     */
+    byte[] toByteArray() {
+        if (size > Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException("The data of " + size
+                    + " bytes does not fit in an array");
+        }
+        byte[] bytes = new byte[(int) size];
+        get(0, bytes, 0, bytes.length);
+        return bytes;
+    }
+
+    /**
+     * Write all the data, block by block
+     *
+     * @param os
+     *            the output stream
+     * @throws IOException
+     *             IO exception
+     */
+    void writeTo(OutputStream os) throws IOException {
+        byte[] array = array();
+        if (array != null) {
+            os.write(array, arrayOffset(), (int) size);
+            return;
+        }
+
+        byte[] block = new byte[(int) Math.min(COPY_BLOCK_SIZE, size)];
+        for (long position = 0; position < size; position += block.length) {
+            int length = (int) Math.min(block.length, size - position);
+            get(position, block, 0, length);
+            os.write(block, 0, length);
+        }
+    }
+}
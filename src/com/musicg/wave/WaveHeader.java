@@ -16,9 +16,13 @@
 
 package com.musicg.wave;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 /**
  * WAV File Specification
@@ -28,7 +32,9 @@ import java.io.OutputStream;
  * @author Jacquet Wong
  * @author Oliver Sampson
  */
-public class WaveHeader {
+public class WaveHeader implements Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     /**
      * RIFF header type
@@ -47,9 +53,30 @@ public class WaveHeader {
      */
     public static final String DATA_HEADER = "data";
     /**
-     * 44 bytes for header
+     * 44 bytes for header, the canonical layout written by this class; the
+     * data of a file read may start elsewhere, see {@link #getDataOffset()}
      */
     public static final int HEADER_BYTE_LENGTH = 44;
+    /**
+     * Audio format of integer PCM samples
+     */
+    public static final int FORMAT_PCM = 1;
+    /**
+     * Audio format of IEEE float samples
+     */
+    public static final int FORMAT_IEEE_FLOAT = 3;
+    /**
+     * Audio format of WAVE_FORMAT_EXTENSIBLE files, the samples are described
+     * by a sub format
+     */
+    public static final int FORMAT_EXTENSIBLE = 0xFFFE;
+
+    private static final int RIFF_HEADER_LENGTH = 12;
+    private static final int CHUNK_HEADER_LENGTH = 8;
+    private static final int FMT_CHUNK_SIZE = 16;
+    private static final int EXTENSIBLE_FMT_CHUNK_SIZE = 40;
+    private static final int MAX_FMT_CHUNK_SIZE = 1024;
+    private static final long UNKNOWN_DATA_SIZE = 0xFFFFFFFFL;
 
     private boolean m_valid;
     private String m_chunkId; // 4 bytes
@@ -65,6 +92,10 @@ public class WaveHeader {
     private int m_bitsPerSample; // unsigned 2 bytes, little endian
     private String m_subChunk2Id; // 4 bytes
     private long m_subChunk2Size; // unsigned 4 bytes, little endian
+    private long m_dataOffset = HEADER_BYTE_LENGTH; // position of the data
+    private int m_validBitsPerSample; // extensible header only
+    private long m_channelMask; // extensible header only
+    private int m_subFormat; // format code of the extensible sub format
 
     /**
      * Constructor.
@@ -74,7 +105,36 @@ public class WaveHeader {
     }
 
     /**
-     * Constructor with stream
+     * Constructor of a canonical PCM header for samples of unknown length,
+     * e.g. of a recording in progress
+     * 
+     * @param sampleRate
+     *            sample rate
+     * @param channels
+     *            number of channels
+     * @param bitsPerSample
+     *            bits per sample
+     */
+    public WaveHeader(int sampleRate, int channels, int bitsPerSample) {
+        this.m_chunkId = RIFF_HEADER;
+        this.m_chunkSize = HEADER_BYTE_LENGTH - 8;
+        this.m_format = WAVE_HEADER;
+        this.m_subChunk1Id = FMT_HEADER;
+        this.m_subChunk1Size = FMT_CHUNK_SIZE;
+        this.m_audioFormat = FORMAT_PCM;
+        this.m_channels = channels;
+        this.m_sampleRate = sampleRate;
+        this.m_blockAlign = (bitsPerSample + 7) / 8 * channels;
+        this.m_byteRate = (long) sampleRate * this.m_blockAlign;
+        this.m_bitsPerSample = bitsPerSample;
+        this.m_validBitsPerSample = bitsPerSample;
+        this.m_subFormat = FORMAT_PCM;
+        this.m_subChunk2Id = DATA_HEADER;
+        this.m_valid = true;
+    }
+
+    /**
+     * Constructor with stream, the stream is read up to the first data byte
      * 
      * @param inputStream
      *            stream to get WAV file
@@ -85,74 +145,59 @@ public class WaveHeader {
         this.m_valid = loadHeader(inputStream);
     }
 
+    /**
+     * Constructor with a file channel, the chunks before the data are skipped
+     * by moving the position of the channel, which is left at the first data
+     * byte
+     * 
+     * @param channel
+     *            channel of a WAV file, at the start of the file
+     * @throws IOException
+     *             IO exception
+     */
+    public WaveHeader(FileChannel channel) throws IOException {
+        this.m_valid = loadHeader(new FileChannelInputStream(channel));
+    }
+
     /**
      * Constructor with raw bytes of a header buffer.
      * 
      * @param headerBuffer
-     *            the bytes of the header buffer.
+     *            the bytes of the header buffer, up to the start of the data
+     *            chunk at least
      */
     public WaveHeader(byte[] headerBuffer) {
-        parseHeader(headerBuffer);
-    }
-
-    void parseHeader(byte[] headerBuffer) {
-        int pointer = 0;
-        this.m_chunkId = new String(new byte[] { headerBuffer[pointer++],
-                headerBuffer[pointer++], headerBuffer[pointer++],
-                headerBuffer[pointer++] });
-        // little endian
-        this.m_chunkSize = (long) (headerBuffer[pointer++] & 0xff)
-                | (long) (headerBuffer[pointer++] & 0xff) << 8
-                | (long) (headerBuffer[pointer++] & 0xff) << 16
-                | (long) (headerBuffer[pointer++] & 0xff << 24);
-        this.m_format = new String(new byte[] { headerBuffer[pointer++],
-                headerBuffer[pointer++], headerBuffer[pointer++],
-                headerBuffer[pointer++] });
-        this.m_subChunk1Id = new String(new byte[] { headerBuffer[pointer++],
-                headerBuffer[pointer++], headerBuffer[pointer++],
-                headerBuffer[pointer++] });
-        this.m_subChunk1Size = (long) (headerBuffer[pointer++] & 0xff)
-                | (long) (headerBuffer[pointer++] & 0xff) << 8
-                | (long) (headerBuffer[pointer++] & 0xff) << 16
-                | (long) (headerBuffer[pointer++] & 0xff) << 24;
-        this.m_audioFormat = (int) ((headerBuffer[pointer++] & 0xff) | (headerBuffer[pointer++] & 0xff) << 8);
-        this.m_channels = (int) ((headerBuffer[pointer++] & 0xff) | (headerBuffer[pointer++] & 0xff) << 8);
-        this.m_sampleRate = (long) (headerBuffer[pointer++] & 0xff)
-                | (long) (headerBuffer[pointer++] & 0xff) << 8
-                | (long) (headerBuffer[pointer++] & 0xff) << 16
-                | (long) (headerBuffer[pointer++] & 0xff) << 24;
-        this.m_byteRate = (long) (headerBuffer[pointer++] & 0xff)
-                | (long) (headerBuffer[pointer++] & 0xff) << 8
-                | (long) (headerBuffer[pointer++] & 0xff) << 16
-                | (long) (headerBuffer[pointer++] & 0xff) << 24;
-        this.m_blockAlign = (int) ((headerBuffer[pointer++] & 0xff) | (headerBuffer[pointer++] & 0xff) << 8);
-        this.m_bitsPerSample = (int) ((headerBuffer[pointer++] & 0xff) | (headerBuffer[pointer++] & 0xff) << 8);
-        this.m_subChunk2Id = new String(new byte[] { headerBuffer[pointer++],
-                headerBuffer[pointer++], headerBuffer[pointer++],
-                headerBuffer[pointer++] });
-        this.m_subChunk2Size = (long) (headerBuffer[pointer++] & 0xff)
-                | (long) (headerBuffer[pointer++] & 0xff) << 8
-                | (long) (headerBuffer[pointer++] & 0xff) << 16
-                | (long) (headerBuffer[pointer++] & 0xff) << 24;
-
+        try {
+            this.m_valid = loadHeader(new ByteArrayInputStream(headerBuffer));
+        } catch (IOException e) {
+            // not thrown by a byte array
+            this.m_valid = false;
+        }
     }
 
     /**
+     * The header is written in the canonical layout, a 16 byte fmt chunk
+     * followed by the data chunk, whatever the chunks of the file it was read
+     * from
+     * 
      * @return byte array representation of the WAV header
      */
     public byte[] getBytes() {
         byte[] buffer = new byte[HEADER_BYTE_LENGTH];
 
         int byteRate = this.getByteRate();
-        int audioFormat = this.getAudioFormat();
+        int audioFormat = this.getSampleFormat();
         int sampleRate = this.getSampleRate();
         int bitsPerSample = this.getBitsPerSample();
         int channels = this.getChannels();
-        long chunkSize = this.getChunkSize();
-        long subChunk1Size = this.getSubChunk1Size();
         long subChunk2Size = this.getSubChunk2Size();
         int blockAlign = this.getBlockAlign();
 
+        // the sizes of the chunks written
+        long chunkSize = isCanonical() ? this.getChunkSize()
+                : subChunk2Size + HEADER_BYTE_LENGTH - 8;
+        long subChunk1Size = FMT_CHUNK_SIZE;
+
         int i = 0;
         for (byte b : RIFF_HEADER.getBytes()) {
             buffer[i++] = b;
@@ -210,72 +255,158 @@ public class WaveHeader {
         return buffer;
     }
 
-    private boolean loadHeader(InputStream inputStream) throws IOException {
+    // true if the header was read from a canonical file or built field by
+    // field, its chunk size is then written as it is
+    private boolean isCanonical() {
+        return this.m_dataOffset == HEADER_BYTE_LENGTH
+                && this.m_audioFormat != FORMAT_EXTENSIBLE;
+    }
 
-        byte[] headerBuffer = new byte[HEADER_BYTE_LENGTH];
+    /**
+     * Walk the chunks of the RIFF file up to the data chunk. The fmt chunk
+     * gives the format, the other chunks (LIST, fact, bext...) are skipped,
+     * and the stream is left at the first data byte.
+     */
+    private boolean loadHeader(InputStream inputStream) throws IOException {
 
-        inputStream.read(headerBuffer);
+        byte[] buffer = new byte[RIFF_HEADER_LENGTH];
+        if (!readFully(inputStream, buffer, RIFF_HEADER_LENGTH)) {
+            System.err.println("WaveHeader: no RIFF header");
+            return false;
+        }
+        this.m_chunkId = getString(buffer, 0);
+        this.m_chunkSize = getUnsignedInt(buffer, 4);
+        this.m_format = getString(buffer, 8);
+        long position = RIFF_HEADER_LENGTH;
+
+        if (!RIFF_HEADER.equals(this.m_chunkId)
+                || !WAVE_HEADER.equals(this.m_format)) {
+            System.err.println("WaveHeader: Unsupported header format");
+            return false;
+        }
 
-        parseHeader(headerBuffer);
+        boolean hasFormat = false;
+        while (readFully(inputStream, buffer, CHUNK_HEADER_LENGTH)) {
+            String chunkId = getString(buffer, 0);
+            long chunkSize = getUnsignedInt(buffer, 4);
+            position += CHUNK_HEADER_LENGTH;
+
+            if (DATA_HEADER.equals(chunkId)) {
+                this.m_subChunk2Id = chunkId;
+                this.m_subChunk2Size = chunkSize;
+                this.m_dataOffset = position;
+                if (!hasFormat) {
+                    System.err.println("WaveHeader: no fmt chunk");
+                }
+                return hasFormat;
+            }
 
-        // FIXME Do header checks.
+            // chunks are word aligned
+            long paddedSize = chunkSize + (chunkSize & 1);
+            if (FMT_HEADER.equals(chunkId) && !hasFormat) {
+                byte[] fmt = new byte[(int) Math.min(chunkSize,
+                        MAX_FMT_CHUNK_SIZE)];
+                if (fmt.length < FMT_CHUNK_SIZE
+                        || !readFully(inputStream, fmt, fmt.length)) {
+                    System.err.println("WaveHeader: invalid fmt chunk");
+                    return false;
+                }
+                this.m_subChunk1Id = chunkId;
+                this.m_subChunk1Size = chunkSize;
+                parseFormat(fmt);
+                hasFormat = true;
+                paddedSize -= fmt.length;
+                position += fmt.length;
+            }
+            if (skipFully(inputStream, paddedSize) < paddedSize) {
+                break;
+            }
+            position += paddedSize;
+        }
 
-        // if (bitsPerSample != 8 && bitsPerSample != 16) {
-        // System.err
-        // .println("WaveHeader: only supports bitsPerSample 8 or 16");
-        // return false;
-        // }
-        //
-        // // check the format is support
-        // if (chunkId.toUpperCase().equals(RIFF_HEADER)
-        // && format.toUpperCase().equals(WAVE_HEADER) && audioFormat == 1) {
-        // return true;
-        // } else {
-        // System.err.println("WaveHeader: Unsupported header format");
-        // }
+        System.err.println("WaveHeader: no data chunk");
+        return false;
+    }
+
+    // the fields of the fmt chunk, and of its extension in an extensible
+    // header
+    private void parseFormat(byte[] fmt) {
+        this.m_audioFormat = getUnsignedShort(fmt, 0);
+        this.m_channels = getUnsignedShort(fmt, 2);
+        this.m_sampleRate = getUnsignedInt(fmt, 4);
+        this.m_byteRate = getUnsignedInt(fmt, 8);
+        this.m_blockAlign = getUnsignedShort(fmt, 12);
+        this.m_bitsPerSample = getUnsignedShort(fmt, 14);
+
+        this.m_validBitsPerSample = this.m_bitsPerSample;
+        this.m_channelMask = 0;
+        this.m_subFormat = this.m_audioFormat;
+        if (this.m_audioFormat == FORMAT_EXTENSIBLE
+                && fmt.length >= EXTENSIBLE_FMT_CHUNK_SIZE) {
+            this.m_validBitsPerSample = getUnsignedShort(fmt, 18);
+            this.m_channelMask = getUnsignedInt(fmt, 20);
+            // the sub format GUID starts with the format code
+            this.m_subFormat = getUnsignedShort(fmt, 24);
+        }
+    }
 
+    private static boolean readFully(InputStream inputStream, byte[] buffer,
+            int length) throws IOException {
+        int offset = 0;
+        while (offset < length) {
+            int n = inputStream.read(buffer, offset, length - offset);
+            if (n < 0) {
+                return false;
+            }
+            offset += n;
+        }
         return true;
     }
 
+    // skip bytes, reading them when the stream cannot skip
+    private static long skipFully(InputStream inputStream, long length)
+            throws IOException {
+        long skipped = 0;
+        while (skipped < length) {
+            long n = inputStream.skip(length - skipped);
+            if (n <= 0) {
+                if (inputStream.read() < 0) {
+                    break;
+                }
+                n = 1;
+            }
+            skipped += n;
+        }
+        return skipped;
+    }
+
+    private static String getString(byte[] buffer, int offset) {
+        return new String(buffer, offset, 4);
+    }
+
+    // little endian
+    private static int getUnsignedShort(byte[] buffer, int offset) {
+        return (buffer[offset] & 0xff) | (buffer[offset + 1] & 0xff) << 8;
+    }
+
+    // little endian
+    private static long getUnsignedInt(byte[] buffer, int offset) {
+        return (long) (buffer[offset] & 0xff)
+                | (long) (buffer[offset + 1] & 0xff) << 8
+                | (long) (buffer[offset + 2] & 0xff) << 16
+                | (long) (buffer[offset + 3] & 0xff) << 24;
+    }
+
     /**
+     * Write the header in the canonical layout, see {@link #getBytes()}
+     * 
      * @param os
      *            OutputStream to write to
      * @throws IOException
      *             IO Exception
      */
     public void save(OutputStream os) throws IOException {
-        int byteRate = this.getByteRate();
-        int audioFormat = this.getAudioFormat();
-        int sampleRate = this.getSampleRate();
-        int bitsPerSample = this.getBitsPerSample();
-        int channels = this.getChannels();
-        long chunkSize = this.getChunkSize();
-        long subChunk1Size = this.getSubChunk1Size();
-        long subChunk2Size = this.getSubChunk2Size();
-        int blockAlign = this.getBlockAlign();
-
-        os.write(RIFF_HEADER.getBytes());
-        // little endian
-        os.write(new byte[] { (byte) (chunkSize), (byte) (chunkSize >> 8),
-                (byte) (chunkSize >> 16), (byte) (chunkSize >> 24) });
-        os.write(WaveHeader.WAVE_HEADER.getBytes());
-        os.write(WaveHeader.FMT_HEADER.getBytes());
-        os.write(new byte[] { (byte) (subChunk1Size),
-                (byte) (subChunk1Size >> 8), (byte) (subChunk1Size >> 16),
-                (byte) (subChunk1Size >> 24) });
-        os.write(new byte[] { (byte) (audioFormat), (byte) (audioFormat >> 8) });
-        os.write(new byte[] { (byte) (channels), (byte) (channels >> 8) });
-        os.write(new byte[] { (byte) (sampleRate), (byte) (sampleRate >> 8),
-                (byte) (sampleRate >> 16), (byte) (sampleRate >> 24) });
-        os.write(new byte[] { (byte) (byteRate), (byte) (byteRate >> 8),
-                (byte) (byteRate >> 16), (byte) (byteRate >> 24) });
-        os.write(new byte[] { (byte) (blockAlign), (byte) (blockAlign >> 8) });
-        os.write(new byte[] { (byte) (bitsPerSample),
-                (byte) (bitsPerSample >> 8) });
-        os.write(WaveHeader.DATA_HEADER.getBytes());
-        os.write(new byte[] { (byte) (subChunk2Size),
-                (byte) (subChunk2Size >> 8), (byte) (subChunk2Size >> 16),
-                (byte) (subChunk2Size >> 24) });
+        os.write(getBytes());
     }
 
     /**
@@ -376,6 +507,56 @@ public class WaveHeader {
         return (int) this.m_subChunk2Size;
     }
 
+    /**
+     * @return position of the first data byte in the file the header was read
+     *         from, HEADER_BYTE_LENGTH for a canonical file
+     */
+    public long getDataOffset() {
+        return this.m_dataOffset;
+    }
+
+    /**
+     * @return number of bytes of the data chunk, -1 if the header does not
+     *         tell, e.g. a file still being recorded
+     */
+    public long getDataLength() {
+        if (this.m_subChunk2Size == 0
+                || this.m_subChunk2Size == UNKNOWN_DATA_SIZE) {
+            return -1;
+        }
+        return this.m_subChunk2Size;
+    }
+
+    /**
+     * @return format of the samples, the sub format of an extensible header
+     *         (FORMAT_PCM or FORMAT_IEEE_FLOAT), the audio format otherwise
+     */
+    public int getSampleFormat() {
+        if (this.m_audioFormat == FORMAT_EXTENSIBLE && this.m_subFormat != 0) {
+            return this.m_subFormat;
+        }
+        return this.m_audioFormat;
+    }
+
+    /**
+     * @return bits of precision in a sample of an extensible header, the bits
+     *         per sample otherwise
+     */
+    public int getValidBitsPerSample() {
+        if (this.m_audioFormat == FORMAT_EXTENSIBLE) {
+            return this.m_validBitsPerSample;
+        }
+        return this.m_bitsPerSample;
+    }
+
+    /**
+     * @return speaker positions of the channels of an extensible header, 0
+     *         if not given
+     */
+    public long getChannelMask() {
+        return this.m_audioFormat == FORMAT_EXTENSIBLE ? this.m_channelMask : 0;
+    }
+
     /**
      * @param sampleRate
      */
@@ -508,6 +689,40 @@ public class WaveHeader {
         sb.append("subChunk2Id: " + this.m_subChunk2Id);
         sb.append("\n");
         sb.append("subChunk2Size: " + this.m_subChunk2Size);
+        sb.append("\n");
+        sb.append("dataOffset: " + this.m_dataOffset);
         return sb.toString();
     }
-}
+
+    // stream over a file channel, skipping by moving the channel position
+    private static final class FileChannelInputStream extends InputStream {
+
+        private final FileChannel channel;
+
+        FileChannelInputStream(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            return channel.read(ByteBuffer.wrap(b, off, len));
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long position = channel.position();
+            long skipped = Math.max(Math.min(n, channel.size() - position), 0);
+            channel.position(position + skipped);
+            return skipped;
+        }
+    }
+}
@@ -0,0 +1,293 @@
+/*
+ * Copyright (C) 2011 Jacquet Wong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.musicg.wave;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Reads the samples of a WAV stream block by block into buffers given by the
+ * caller, so a file of any length is processed in constant memory. Only one
+ * block of sample bytes is kept, the channels are handled by a
+ * {@link ChannelPolicy} while the block is decoded.
+ *
+ * @author Jacquet Wong
+ */
+public class WaveReader implements SampleSource, Closeable {
+
+    private static final int BLOCK_SIZE = 1 << 16;
+
+    private final WaveHeader waveHeader;
+    private final InputStream inputStream;
+    private final long dataSize; // -1 if the data goes on to the end
+    private final byte[] block;
+    private ChannelPolicy channelPolicy = ChannelPolicy.DOWNMIX;
+    private SampleDecoder sampleDecoder;
+    private long bytesRead; // data bytes read so far
+    private boolean endOfData;
+
+    /**
+     * Constructor, reads the header chunks of the stream up to the data
+     *
+     * @param inputStream
+     *            WAV file input stream
+     * @throws IOException
+     *             IO exception
+     */
+    public WaveReader(InputStream inputStream) throws IOException {
+        this(new WaveHeader(inputStream), inputStream);
+    }
+
+    /**
+     * Constructor, reads the header from the channel. The chunks of a file
+     * channel before the data are skipped by moving its position.
+     *
+     * @param channel
+     *            channel of a WAV file, at the start of the file
+     * @throws IOException
+     *             IO exception
+     */
+    public WaveReader(ReadableByteChannel channel) throws IOException {
+        this(channel instanceof FileChannel ? new WaveHeader(
+                (FileChannel) channel) : new WaveHeader(Channels
+                .newInputStream(channel)), Channels.newInputStream(channel));
+    }
+
+    /**
+     * Constructor, for a stream whose header has already been read, at the
+     * start of the data
+     *
+     * @param waveHeader
+     *            header describing the samples
+     * @param inputStream
+     *            stream of the sample bytes
+     */
+    public WaveReader(WaveHeader waveHeader, InputStream inputStream) {
+        this.waveHeader = waveHeader;
+        this.inputStream = inputStream;
+        this.sampleDecoder = new SampleDecoder(waveHeader, channelPolicy);
+
+        // a stream still being recorded has no size yet
+        this.dataSize = waveHeader.getDataLength();
+
+        int frameSize = sampleDecoder.getFrameSize();
+        this.block = new byte[Math.max(BLOCK_SIZE / frameSize, 1) * frameSize];
+    }
+
+    /**
+     * @return the WAV header
+     */
+    public WaveHeader getWaveHeader() {
+        return waveHeader;
+    }
+
+    @Override
+    public int getSampleRate() {
+        return waveHeader.getSampleRate();
+    }
+
+    /**
+     * Set how the channels are decoded, from the next read on
+     *
+     * @param channelPolicy
+     *            the channel policy, ChannelPolicy.DOWNMIX by default
+     */
+    public void setChannelPolicy(ChannelPolicy channelPolicy) {
+        this.sampleDecoder = new SampleDecoder(waveHeader, channelPolicy);
+        this.channelPolicy = channelPolicy;
+    }
+
+    /**
+     * @return how the channels are decoded
+     */
+    public ChannelPolicy getChannelPolicy() {
+        return channelPolicy;
+    }
+
+    /**
+     * @return number of signals read, the number of channels for the per
+     *         channel policy, 1 otherwise
+     */
+    public int getNumSignals() {
+        return sampleDecoder.getNumSignals();
+    }
+
+    /**
+     * @return number of samples of a signal in the stream, -1 if the header
+     *         does not tell
+     */
+    public long getNumSamples() {
+        return dataSize < 0 ? -1 : dataSize / sampleDecoder.getFrameSize();
+    }
+
+    /**
+     * @return number of samples of a signal read or skipped so far
+     */
+    public long getSamplePosition() {
+        return bytesRead / sampleDecoder.getFrameSize();
+    }
+
+    /**
+     * Read amplitudes, the samples of more than 16 bit keep their highest 16
+     * bit
+     *
+     * @param amplitudes
+     *            destination of the amplitudes
+     * @param offset
+     *            position of the first amplitude
+     * @param length
+     *            max. number of amplitudes to read
+     * @return number of amplitudes read, -1 at the end of the data
+     * @throws IOException
+     *             IO exception
+     */
+    public int read(short[] amplitudes, int offset, int length)
+            throws IOException {
+        int total = 0;
+        while (total < length) {
+            int n = fillBlock(length - total);
+            if (n <= 0) {
+                break;
+            }
+            sampleDecoder.decode(block, 0, n, amplitudes, offset + total);
+            total += n;
+        }
+        return total == 0 && length > 0 ? -1 : total;
+    }
+
+    /**
+     * Read amplitudes in single precision
+     *
+     * @param amplitudes
+     *            destination of the amplitudes
+     * @param offset
+     *            position of the first amplitude
+     * @param length
+     *            max. number of amplitudes to read
+     * @return number of amplitudes read, -1 at the end of the data
+     * @throws IOException
+     *             IO exception
+     */
+    @Override
+    public int read(float[] amplitudes, int offset, int length)
+            throws IOException {
+        int total = 0;
+        while (total < length) {
+            int n = fillBlock(length - total);
+            if (n <= 0) {
+                break;
+            }
+            sampleDecoder.decode(block, 0, n, amplitudes, offset + total);
+            total += n;
+        }
+        return total == 0 && length > 0 ? -1 : total;
+    }
+
+    /**
+     * Read amplitudes in single precision, a signal per array
+     *
+     * @param amplitudes
+     *            destination of the amplitudes, getNumSignals() arrays
+     * @param offset
+     *            position of the first amplitude in the arrays
+     * @param length
+     *            max. number of amplitudes to read in each array
+     * @return number of amplitudes read in each array, -1 at the end of the
+     *         data
+     * @throws IOException
+     *             IO exception
+     */
+    public int read(float[][] amplitudes, int offset, int length)
+            throws IOException {
+        int total = 0;
+        while (total < length) {
+            int n = fillBlock(length - total);
+            if (n <= 0) {
+                break;
+            }
+            sampleDecoder.decode(block, 0, n, amplitudes, offset + total);
+            total += n;
+        }
+        return total == 0 && length > 0 ? -1 : total;
+    }
+
+    /**
+     * Skip samples
+     *
+     * @param numSamples
+     *            number of samples of a signal to skip
+     * @return number of samples skipped
+     * @throws IOException
+     *             IO exception
+     */
+    public long skip(long numSamples) throws IOException {
+        long skipped = 0;
+        while (skipped < numSamples) {
+            int n = fillBlock((int) Math.min(numSamples - skipped,
+                    Integer.MAX_VALUE));
+            if (n <= 0) {
+                break;
+            }
+            skipped += n;
+        }
+        return skipped;
+    }
+
+    /**
+     * @return true once the end of the data is reached
+     */
+    public boolean isEndOfData() {
+        return endOfData;
+    }
+
+    @Override
+    public void close() throws IOException {
+        inputStream.close();
+    }
+
+    // read the bytes of up to maxSamples whole frames into the block, a
+    // partial frame at the end of the stream is dropped
+    private int fillBlock(int maxSamples) throws IOException {
+        int frameSize = sampleDecoder.getFrameSize();
+        long numBytes = Math.min((long) maxSamples * frameSize, block.length
+                / frameSize * frameSize);
+        if (dataSize >= 0) {
+            numBytes = Math.min(numBytes, (dataSize - bytesRead) / frameSize
+                    * frameSize);
+        }
+
+        int length = 0;
+        while (length < numBytes) {
+            int n = inputStream.read(block, length, (int) numBytes - length);
+            if (n < 0) {
+                break;
+            }
+            length += n;
+        }
+
+        int numSamples = length / frameSize;
+        bytesRead += length;
+        if (numSamples < numBytes / frameSize || numBytes == 0) {
+            endOfData = true;
+        }
+        return numSamples;
+    }
+}
@@ -0,0 +1,316 @@
+/*
+ * Copyright (C) 2011 Jacquet Wong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.musicg.wave;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Exports many segments of one recording, each as a WAV file of its own, in
+ * a single pass over the recording.
+ *
+ * The segments are added in order and do not overlap. From a {@link Wave}
+ * each segment is a clip viewing the data of the wave, so nothing is copied
+ * before it is written, and a mapped wave is transferred from its file. From
+ * a WAV stream the data is read once, the bytes between the segments are
+ * skipped.
+ *
+ * The segments are written to files in a directory or to the entries of a
+ * zip archive, named by {@link #getSegmentName(int)}.
+ *
+ * @author Jacquet Wong
+ */
+public class WaveSegmentExporter {
+
+    private static final int COPY_BLOCK_SIZE = 1 << 16;
+
+    private final List<long[]> segments = new ArrayList<long[]>();
+    private String namePrefix = "segment";
+
+    /**
+     * Add a segment, after the segments already added
+     *
+     * @param startFrame
+     *            first sample frame of the segment, a frame has the samples
+     *            of all the channels
+     * @param endFrame
+     *            frame after the last frame of the segment
+     * @throws IllegalArgumentException
+     *             if the segment is empty or starts before the end of the
+     *             previous one
+     */
+    public void addSegment(long startFrame, long endFrame) {
+        long previousEnd = segments.isEmpty() ? 0 : segments.get(segments
+                .size() - 1)[1];
+        if (startFrame < previousEnd || endFrame <= startFrame) {
+            throw new IllegalArgumentException("Invalid segment " + startFrame
+                    + "-" + endFrame + ", the segments must be sorted and "
+                    + "not overlap");
+        }
+        segments.add(new long[] { startFrame, endFrame });
+    }
+
+    /**
+     * @return number of segments
+     */
+    public int getNumSegments() {
+        return segments.size();
+    }
+
+    /**
+     * Remove all the segments
+     */
+    public void clearSegments() {
+        segments.clear();
+    }
+
+    /**
+     * Set the prefix of the names of the segments
+     *
+     * @param namePrefix
+     *            the prefix, "segment" by default
+     */
+    public void setNamePrefix(String namePrefix) {
+        this.namePrefix = namePrefix;
+    }
+
+    /**
+     * @return the prefix of the names of the segments
+     */
+    public String getNamePrefix() {
+        return namePrefix;
+    }
+
+    /**
+     * Get the name of the file or archive entry of a segment, e.g.
+     * segment-0001.wav for the first one
+     *
+     * @param index
+     *            index of the segment
+     * @return the name
+     */
+    public String getSegmentName(int index) {
+        return String.format("%s-%04d.wav", namePrefix, index + 1);
+    }
+
+    /**
+     * Write the segments of a wave to files
+     *
+     * @param wave
+     *            the wave
+     * @param directory
+     *            directory of the files
+     * @return the files, in the order of the segments
+     * @throws IOException
+     *             IO exception
+     * @throws IllegalArgumentException
+     *             if a segment ends after the data of the wave
+     */
+    public File[] export(Wave wave, File directory) throws IOException {
+        checkFrames(wave);
+
+        File[] files = new File[segments.size()];
+        for (int i = 0; i < segments.size(); i++) {
+            files[i] = new File(directory, getSegmentName(i));
+            FileOutputStream fos = new FileOutputStream(files[i]);
+            try {
+                getClip(wave, i).save(fos.getChannel(), wave.isMapped());
+            } finally {
+                fos.close();
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Write the segments of a wave to a zip archive, an entry per segment.
+     * The archive is neither finished nor closed.
+     *
+     * @param wave
+     *            the wave
+     * @param zip
+     *            the archive
+     * @throws IOException
+     *             IO exception
+     * @throws IllegalArgumentException
+     *             if a segment ends after the data of the wave
+     */
+    public void export(Wave wave, ZipOutputStream zip) throws IOException {
+        checkFrames(wave);
+
+        for (int i = 0; i < segments.size(); i++) {
+            zip.putNextEntry(new ZipEntry(getSegmentName(i)));
+            getClip(wave, i).save(zip);
+            zip.closeEntry();
+        }
+    }
+
+    /**
+     * Write the segments of a WAV stream to files, reading the stream once
+     *
+     * @param inputStream
+     *            WAV stream, at the start of its header
+     * @param directory
+     *            directory of the files
+     * @return the files, in the order of the segments
+     * @throws IOException
+     *             IO exception
+     * @throws EOFException
+     *             if a segment ends after the data of the stream
+     * @throws IllegalArgumentException
+     *             if a segment ends after the data length of the header
+     */
+    public File[] export(InputStream inputStream, File directory)
+            throws IOException {
+        WaveHeader header = new WaveHeader(inputStream);
+        int frameSize = getFrameSize(header);
+        if (header.getDataLength() >= 0) {
+            checkFrames(header.getDataLength() / frameSize);
+        }
+        byte[] block = new byte[COPY_BLOCK_SIZE / frameSize * frameSize];
+
+        File[] files = new File[segments.size()];
+        long position = 0;
+        for (int i = 0; i < segments.size(); i++) {
+            files[i] = new File(directory, getSegmentName(i));
+            FileOutputStream fos = new FileOutputStream(files[i]);
+            try {
+                position = copySegment(inputStream, header, position, i,
+                        block, fos);
+            } finally {
+                fos.close();
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Write the segments of a WAV stream to a zip archive, an entry per
+     * segment, reading the stream once. The archive is neither finished nor
+     * closed.
+     *
+     * @param inputStream
+     *            WAV stream, at the start of its header
+     * @param zip
+     *            the archive
+     * @throws IOException
+     *             IO exception
+     * @throws EOFException
+     *             if a segment ends after the data of the stream
+     * @throws IllegalArgumentException
+     *             if a segment ends after the data length of the header
+     */
+    public void export(InputStream inputStream, ZipOutputStream zip)
+            throws IOException {
+        WaveHeader header = new WaveHeader(inputStream);
+        int frameSize = getFrameSize(header);
+        if (header.getDataLength() >= 0) {
+            checkFrames(header.getDataLength() / frameSize);
+        }
+        byte[] block = new byte[COPY_BLOCK_SIZE / frameSize * frameSize];
+
+        long position = 0;
+        for (int i = 0; i < segments.size(); i++) {
+            zip.putNextEntry(new ZipEntry(getSegmentName(i)));
+            position = copySegment(inputStream, header, position, i, block,
+                    zip);
+            zip.closeEntry();
+        }
+    }
+
+    // the segments must lie in the data, known before anything is written
+    private void checkFrames(Wave wave) {
+        checkFrames(wave.getDataSize() / wave.getFrameSize());
+    }
+
+    private void checkFrames(long numFrames) {
+        if (segments.isEmpty()) {
+            return;
+        }
+        long end = segments.get(segments.size() - 1)[1];
+        if (end > numFrames) {
+            throw new IllegalArgumentException("The segments end at frame "
+                    + end + ", after the " + numFrames + " frames of the data");
+        }
+    }
+
+    private Wave getClip(Wave wave, int index) {
+        long[] segment = segments.get(index);
+        return wave.getClip(segment[0], segment[1] - segment[0]);
+    }
+
+    // skip from the frame at position to the segment, write its header and
+    // copy its data, return the frame after the segment
+    private long copySegment(InputStream inputStream, WaveHeader header,
+            long position, int index, byte[] block, OutputStream os)
+            throws IOException {
+        long[] segment = segments.get(index);
+        int frameSize = getFrameSize(header);
+        skipFully(inputStream, (segment[0] - position) * frameSize);
+
+        long dataSize = (segment[1] - segment[0]) * frameSize;
+        WaveHeader segmentHeader = new WaveHeader(header.getBytes());
+        segmentHeader.setSubChunk2Size(dataSize);
+        segmentHeader.setChunkSize(dataSize + WaveHeader.HEADER_BYTE_LENGTH
+                - 8);
+        segmentHeader.save(os);
+
+        long copied = 0;
+        while (copied < dataSize) {
+            int n = inputStream.read(block, 0, (int) Math.min(block.length,
+                    dataSize - copied));
+            if (n < 0) {
+                throw new EOFException("The stream ends in segment "
+                        + (index + 1));
+            }
+            os.write(block, 0, n);
+            copied += n;
+        }
+        return segment[1];
+    }
+
+    private static void skipFully(InputStream inputStream, long numBytes)
+            throws IOException {
+        while (numBytes > 0) {
+            long n = inputStream.skip(numBytes);
+            if (n <= 0) {
+                // skip may stop early, a read tells whether the stream ended
+                if (inputStream.read() < 0) {
+                    throw new EOFException("The stream ends before a segment");
+                }
+                n = 1;
+            }
+            numBytes -= n;
+        }
+    }
+
+    private static int getFrameSize(WaveHeader header) {
+        if (header.getBlockAlign() > 0) {
+            return header.getBlockAlign();
+        }
+        return Math.max(header.getBitsPerSample() / 8 * header.getChannels(),
+                1);
+    }
+}
@@ -1,6 +1,11 @@
 package com.musicg.wave;
 
 /**
+ * Trims a wave in place. The data is not copied: the wave keeps viewing the
+ * part of its bytes or of its mapped file that is left, so a trim costs the
+ * same whatever the length of the wave. Trims are done in whole sample
+ * frames, a frame has the samples of all the channels.
+ * 
  * @author Oliver Sampson, University of Konstanz
  *
  */
@@ -12,7 +17,7 @@ public class WaveTrimmer {
      * 
      * @author Jacquet Wong
      * @param numberOfSample
-     *            numberOfSample trimmed from beginning
+     *            number of bytes trimmed from beginning, see trim(int, int)
      * @throws Exception 
      */
     public void leftTrim(int numberOfSample) throws Exception {
@@ -24,7 +29,7 @@ public class WaveTrimmer {
      * 
      * @author Jacquet Wong
      * @param numberOfSample
-     *            numberOfSample trimmed from ending
+     *            number of bytes trimmed from ending, see trim(int, int)
      * @throws Exception 
      */
     public void rightTrim(int numberOfSample) throws Exception {
@@ -44,15 +49,12 @@ public class WaveTrimmer {
     public void trim(double leftTrimSecond, double rightTrimSecond) throws Exception {
 
         int sampleRate = this.m_wave.getHeader().getSampleRate();
-        int bitsPerSample = this.m_wave.getHeader().getBitsPerSample();
-        int channels = this.m_wave.getHeader().getChannels();
 
-        int leftTrimNumberOfSample = (int) (sampleRate * bitsPerSample / 8
-                * channels * leftTrimSecond);
-        int rightTrimNumberOfSample = (int) (sampleRate * bitsPerSample / 8
-                * channels * rightTrimSecond);
+        // whole frames, whatever the channels and sample size
+        long leftTrimNumberOfFrames = (long) (sampleRate * leftTrimSecond);
+        long rightTrimNumberOfFrames = (long) (sampleRate * rightTrimSecond);
 
-        trim(leftTrimNumberOfSample, rightTrimNumberOfSample);
+        trimFrames(leftTrimNumberOfFrames, rightTrimNumberOfFrames);
     }
 
     /**
@@ -91,37 +93,53 @@ public class WaveTrimmer {
      * Trim the wave data
      * 
      * @param leftTrimNumberOfSample
-     *            Number of sample trimmed from beginning
+     *            Number of bytes trimmed from beginning, rounded down to
+     *            whole sample frames
      * @param rightTrimNumberOfSample
-     *            Number of sample trimmed from ending
+     *            Number of bytes trimmed from ending, rounded down to whole
+     *            sample frames
      * @throws Exception exception
      */
     public void trim(int leftTrimNumberOfSample, int rightTrimNumberOfSample) throws Exception {
+        int frameSize = this.m_wave.getFrameSize();
+        trimFrames(leftTrimNumberOfSample / frameSize, rightTrimNumberOfSample
+                / frameSize);
+    }
 
-        long chunkSize = this.m_wave.getHeader().getChunkSize();
-        long subChunk2Size = this.m_wave.getHeader().getSubChunk2Size();
-
-        long totalTrimmed = leftTrimNumberOfSample + rightTrimNumberOfSample;
-
-        if (totalTrimmed > subChunk2Size) {
-            leftTrimNumberOfSample = (int) subChunk2Size;
+    /**
+     * Trim the wave data by sample frames, a frame has the samples of all
+     * the channels
+     * 
+     * @param leftTrimNumberOfFrames
+     *            Number of frames trimmed from beginning
+     * @param rightTrimNumberOfFrames
+     *            Number of frames trimmed from ending
+     * @throws IllegalArgumentException
+     *             if the numbers are negative or more frames than the wave
+     *             has are trimmed
+     */
+    public void trimFrames(long leftTrimNumberOfFrames,
+            long rightTrimNumberOfFrames) {
+        long frameSize = this.m_wave.getFrameSize();
+        long dataSize = this.m_wave.getDataSize() / frameSize * frameSize;
+        long leftTrimmed = leftTrimNumberOfFrames * frameSize;
+        long totalTrimmed = leftTrimmed + rightTrimNumberOfFrames * frameSize;
+
+        if (leftTrimNumberOfFrames < 0 || rightTrimNumberOfFrames < 0
+                || totalTrimmed > dataSize) {
+            throw new IllegalArgumentException(
+                    "Error: negative trimming length.");
         }
 
         // update wav info
-        chunkSize -= totalTrimmed;
-        subChunk2Size -= totalTrimmed;
-
-        if (chunkSize >= 0 && subChunk2Size >= 0) {
-            this.m_wave.getHeader().setChunkSize(chunkSize);
-            this.m_wave.getHeader().setSubChunk2Size(subChunk2Size);
-
-            byte[] trimmedData = new byte[(int) subChunk2Size];
-            System.arraycopy(this.m_wave.getBytes(), (int) leftTrimNumberOfSample,
-                    trimmedData, 0, (int) subChunk2Size);
-            this.m_wave.setBytes(trimmedData);
-        } else{ 
-            throw new Exception("Error: negative trimming length.");
-        }
+        WaveHeader header = this.m_wave.getHeader();
+        long subChunk2Size = dataSize - totalTrimmed;
+        header.setChunkSize((header.getChunkSize() & 0xFFFFFFFFL)
+                - ((header.getSubChunk2Size() & 0xFFFFFFFFL) - subChunk2Size));
+        header.setSubChunk2Size(subChunk2Size);
+
+        // the wave views the bytes left
+        this.m_wave.setDataRange(leftTrimmed, subChunk2Size);
     }
     
     /**
@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2011 Jacquet Wong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.musicg.wave;
+
+/**
+ * Receives the updates of a {@link StreamingWaveTypeDetector} as the frames
+ * arrive
+ *
+ * @author Jacquet Wong
+ */
+public interface WaveTypeListener {
+
+    /**
+     * Called after every frame
+     *
+     * @param frameNumber
+     *            number of the frame, from 0
+     * @param probability
+     *            part of the frames so far that passed the vote
+     */
+    void onProbability(long frameNumber, double probability);
+
+    /**
+     * Called when a frame passes the vote after one that did not
+     *
+     * @param frameNumber
+     *            number of the frame
+     */
+    void onOnset(long frameNumber);
+
+    /**
+     * Called when a frame fails the vote after one that passed
+     *
+     * @param frameNumber
+     *            number of the frame
+     */
+    void onOffset(long frameNumber);
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2011 Jacquet Wong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.musicg.wave.extension;
+
+import java.nio.DoubleBuffer;
+
+import com.musicg.dsp.FastFourierTransform;
+import com.musicg.dsp.WindowFunction;
+import com.musicg.wave.ChannelPolicy;
+import com.musicg.wave.SampleDecoder;
+import com.musicg.wave.Wave;
+
+/**
+ * The frames of a spectrogram as its settings lay them out: the samples of
+ * each frame, the window applied on them, the transform and the frequency
+ * units it gives. The spectrograms differ in how they keep the intensities.
+ *
+ * @author Jacquet Wong
+ */
+abstract class AbstractSpectrogram {
+
+    // intensities below are treated as silence in the normalization
+    static final double MIN_VALID_AMPLITUDE = 0.00000000001F;
+
+    private SpectrogramSettings settings;
+    private FrameSampler frameSampler; // null once the frames are built
+    private DoubleBuffer window;
+    private int fftSampleSize; // number of sample in fft, the value needed to
+                               // be a number to power of 2
+    private int overlapFactor; // 1/overlapFactor overlapping, e.g. 1/4=25%
+                               // overlapping
+    private int numFrames; // number of frames of the spectrogram
+    private int framesPerSecond; // frame per second of the spectrogram
+    private int numFrequencyUnit; // number of y-axis unit
+    private double unitFrequency; // frequency per y-axis unit
+
+    // channels are downmixed, samples of more than 16 bit are kept in single
+    // precision
+    void init(Wave wave, SpectrogramSettings settings) {
+        int sampleRate = wave.getWaveHeader().getSampleRate();
+        if (SampleDecoder.isHighResolution(wave.getWaveHeader())) {
+            init(null,
+                    wave.getSharedFloatSampleAmplitudes(ChannelPolicy.DOWNMIX),
+                    sampleRate, wave.length(), settings);
+        } else {
+            init(wave.getSharedSampleAmplitudes(ChannelPolicy.DOWNMIX), null,
+                    sampleRate, wave.length(), settings);
+        }
+    }
+
+    void init(short[] amplitudes, float[] floatAmplitudes, int sampleRate,
+            float length, SpectrogramSettings settings) {
+        this.settings = new SpectrogramSettings(settings);
+
+        if (Integer.bitCount(settings.getFftSampleSize()) == 1) {
+            this.fftSampleSize = settings.getFftSampleSize();
+        } else {
+            System.err.print("The input number must be a power of 2");
+            this.fftSampleSize = Spectrogram.SPECTROGRAM_DEFAULT_FFT_SAMPLE_SIZE;
+            this.settings.setFftSampleSize(fftSampleSize);
+        }
+
+        this.overlapFactor = settings.getOverlapFactor();
+
+        frameSampler = floatAmplitudes != null ? new FrameSampler(
+                floatAmplitudes, fftSampleSize, overlapFactor)
+                : new FrameSampler(amplitudes, fftSampleSize, overlapFactor);
+        numFrames = frameSampler.getNumFrames();
+        framesPerSecond = (int) (numFrames / length);
+
+        window = WindowFunction.getWindow(this.settings.getWindowType(),
+                fftSampleSize);
+
+        boolean realTransform = this.settings.isRealTransform();
+        if (numFrames > 0) {
+            numFrequencyUnit = new FastFourierTransform(realTransform)
+                    .getNumMagnitudes(fftSampleSize);
+            if (realTransform) {
+                // the bins go from 0 to the Nyquist frequency included
+                unitFrequency = (double) sampleRate / fftSampleSize;
+            } else {
+                // frequency could be caught within the half of nSamples
+                // according to Nyquist theory
+                unitFrequency = (double) sampleRate / 2 / numFrequencyUnit;
+            }
+        }
+    }
+
+    /**
+     * @return a transform of the frames, one per thread
+     */
+    FastFourierTransform newTransform() {
+        return new FastFourierTransform(settings.isRealTransform());
+    }
+
+    /**
+     * Get the windowed signal of a frame
+     *
+     * @param frame
+     *            frame number
+     * @param signal
+     *            destination of fftSampleSize windowed samples
+     */
+    void getFrame(int frame, double[] signal) {
+        frameSampler.getFrame(frame, window, signal);
+    }
+
+    /**
+     * Drop the amplitudes, which may be shared by the wave, once all the
+     * frames are computed
+     */
+    void releaseAmplitudes() {
+        frameSampler = null;
+    }
+
+    /**
+     * @return number of frames
+     */
+    public int getNumFrames() {
+        return numFrames;
+    }
+
+    /**
+     * @return frames per second
+     */
+    public int getFramesPerSecond() {
+        return framesPerSecond;
+    }
+
+    /**
+     * @return number of frequeny unit
+     */
+    public int getNumFrequencyUnit() {
+        return numFrequencyUnit;
+    }
+
+    /**
+     * @return unit frequency
+     */
+    public double getUnitFrequency() {
+        return unitFrequency;
+    }
+
+    /**
+     * @return FFT sample size
+     */
+    public int getFftSampleSize() {
+        return fftSampleSize;
+    }
+
+    /**
+     * @return overlap factor
+     */
+    public int getOverlapFactor() {
+        return overlapFactor;
+    }
+
+    /**
+     * @return true if the frames went through a real transform
+     */
+    public boolean isRealTransform() {
+        return settings.isRealTransform();
+    }
+
+    /**
+     * @return a copy of the settings of this spectrogram
+     */
+    public SpectrogramSettings getSettings() {
+        return new SpectrogramSettings(settings);
+    }
+}
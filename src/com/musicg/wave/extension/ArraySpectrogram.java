@@ -0,0 +1,460 @@
+/*
+ * Copyright (C) 2011 Jacquet Wong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.musicg.wave.extension;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+import com.musicg.dsp.FastFourierTransform;
+
+/**
+ * A spectrogram kept whole in row-major arrays, the absolute intensities and
+ * their logarithm normalization. The frames are computed and normalized the
+ * same way whatever the precision of the arrays, see {@link Intensities}.
+ *
+ * @param <A>
+ *            type of the arrays, double[] or float[]
+ *
+ * @author Jacquet Wong
+ */
+abstract class ArraySpectrogram<A> extends AbstractSpectrogram {
+
+    private Intensities<A> absoluteSpectrogram; // absolute spectrogram
+    private Intensities<A> spectrogram; // relative spectrogram, null if there
+                                        // is no frame
+
+    /**
+     * @param length
+     *            number of intensities
+     * @return intensities of the precision of the spectrogram
+     */
+    abstract Intensities<A> newIntensities(int length);
+
+    /**
+     * Build spectrogram, in parallel if a pool is given
+     */
+    void buildSpectrogram(ForkJoinPool pool, int chunkSize) {
+        int numFrames = getNumFrames();
+        int numFrequencyUnit = getNumFrequencyUnit();
+
+        // for each frame, window the signal and do fft on it into its row
+        absoluteSpectrogram = newIntensities(numFrames * numFrequencyUnit);
+        FrameTask frameTask = new FrameTask(this, absoluteSpectrogram, 0,
+                numFrames, chunkSize);
+        if (pool != null) {
+            pool.invoke(frameTask);
+        } else {
+            frameTask.computeFrames();
+        }
+        releaseAmplitudes();
+
+        if (numFrames > 0) {
+
+            // normalization of absoultSpectrogram
+            spectrogram = newIntensities(absoluteSpectrogram.length());
+
+            // set max and min amplitudes
+            double maxAmp = absoluteSpectrogram.getMinValue();
+            double minAmp = absoluteSpectrogram.getMaxValue();
+            if (pool != null) {
+                AmplitudeRange range = pool.invoke(new AmplitudeRangeTask(
+                        absoluteSpectrogram, 0, absoluteSpectrogram.length(),
+                        chunkSize * numFrequencyUnit));
+                // the first value was compared to the initial max
+                if (range.first > maxAmp) {
+                    maxAmp = range.max;
+                    minAmp = Math.min(minAmp, range.minNotRecord);
+                } else {
+                    maxAmp = Math.max(maxAmp, range.max);
+                    minAmp = Math.min(minAmp, Math.min(range.first,
+                            range.minNotRecord));
+                }
+            } else {
+                for (int i = 0; i < absoluteSpectrogram.length(); i++) {
+                    double value = absoluteSpectrogram.get(i);
+                    if (value > maxAmp) {
+                        maxAmp = value;
+                    } else if (value < minAmp) {
+                        minAmp = value;
+                    }
+                }
+            }
+            // end set max and min amplitudes
+
+            // normalization
+            // avoiding divided by zero
+            if (minAmp == 0) {
+                minAmp = MIN_VALID_AMPLITUDE;
+            }
+
+            // perceptual difference
+            double diff = Math.log10(absoluteSpectrogram.divide(maxAmp,
+                    minAmp));
+            NormalizationTask normalizationTask = new NormalizationTask(
+                    absoluteSpectrogram, spectrogram, minAmp, diff, 0,
+                    absoluteSpectrogram.length(), chunkSize * numFrequencyUnit);
+            if (pool != null) {
+                pool.invoke(normalizationTask);
+            } else {
+                normalizationTask.normalize();
+            }
+            // end normalization
+        }
+    }
+
+    /**
+     * @return logarithm normalized spectrogram, row-major, null if there is no
+     *         frame
+     */
+    A getNormalizedArray() {
+        return spectrogram != null ? spectrogram.array() : null;
+    }
+
+    /**
+     * @return absolute spectrogram, row-major
+     */
+    A getAbsoluteArray() {
+        return absoluteSpectrogram.array();
+    }
+
+    /**
+     * @return distance between two consecutive frames in the row-major arrays
+     */
+    public int getStride() {
+        return getNumFrequencyUnit();
+    }
+
+    /**
+     * @param frame
+     *            frame number
+     * @return position of the first frequency unit of the frame in the
+     *         row-major arrays
+     */
+    public int getRowOffset(int frame) {
+        return frame * getNumFrequencyUnit();
+    }
+
+    /**
+     * The intensities of a spectrogram stored in double or single precision.
+     * The values are read and written as doubles, and the arithmetic of the
+     * normalization is done in the precision of the values stored.
+     *
+     * @param <A>
+     *            type of the array
+     */
+    abstract static class Intensities<A> {
+
+        /**
+         * @return the array of the intensities
+         */
+        abstract A array();
+
+        /**
+         * @return number of intensities
+         */
+        abstract int length();
+
+        abstract double get(int i);
+
+        abstract void set(int i, double value);
+
+        /**
+         * Set the magnitudes of a signal, transformed in place
+         *
+         * @param fft
+         *            the transform
+         * @param signal
+         *            the windowed signal
+         * @param offset
+         *            position of the first frequency unit
+         */
+        abstract void setMagnitudes(FastFourierTransform fft, double[] signal,
+                int offset);
+
+        /**
+         * @return smallest positive value, the initial max of the scan
+         */
+        abstract double getMinValue();
+
+        /**
+         * @return largest value, the initial min of the scan
+         */
+        abstract double getMaxValue();
+
+        /**
+         * @return a / b in the precision of the values
+         */
+        abstract double divide(double a, double b);
+    }
+
+    static final class DoubleIntensities extends Intensities<double[]> {
+
+        private final double[] values;
+
+        DoubleIntensities(int length) {
+            values = new double[length];
+        }
+
+        @Override
+        double[] array() {
+            return values;
+        }
+
+        @Override
+        int length() {
+            return values.length;
+        }
+
+        @Override
+        double get(int i) {
+            return values[i];
+        }
+
+        @Override
+        void set(int i, double value) {
+            values[i] = value;
+        }
+
+        @Override
+        void setMagnitudes(FastFourierTransform fft, double[] signal,
+                int offset) {
+            fft.getMagnitudes(signal, values, offset);
+        }
+
+        @Override
+        double getMinValue() {
+            return Double.MIN_VALUE;
+        }
+
+        @Override
+        double getMaxValue() {
+            return Double.MAX_VALUE;
+        }
+
+        @Override
+        double divide(double a, double b) {
+            return a / b;
+        }
+    }
+
+    static final class FloatIntensities extends Intensities<float[]> {
+
+        private final float[] values;
+
+        FloatIntensities(int length) {
+            values = new float[length];
+        }
+
+        @Override
+        float[] array() {
+            return values;
+        }
+
+        @Override
+        int length() {
+            return values.length;
+        }
+
+        @Override
+        double get(int i) {
+            return values[i];
+        }
+
+        @Override
+        void set(int i, double value) {
+            values[i] = (float) value;
+        }
+
+        @Override
+        void setMagnitudes(FastFourierTransform fft, double[] signal,
+                int offset) {
+            fft.getMagnitudes(signal, values, offset);
+        }
+
+        @Override
+        double getMinValue() {
+            return Float.MIN_VALUE;
+        }
+
+        @Override
+        double getMaxValue() {
+            return Float.MAX_VALUE;
+        }
+
+        @Override
+        double divide(double a, double b) {
+            return (float) a / (float) b;
+        }
+    }
+
+    // computes the rows of the frames from..to, splitting the range while it
+    // is larger than chunkSize. Each leaf has its own fft and signal buffer.
+    private static class FrameTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+        private final AbstractSpectrogram frames;
+        private final Intensities<?> absoluteSpectrogram;
+        private final int from, to;
+        private final int chunkSize;
+
+        FrameTask(AbstractSpectrogram frames,
+                Intensities<?> absoluteSpectrogram, int from, int to,
+                int chunkSize) {
+            this.frames = frames;
+            this.absoluteSpectrogram = absoluteSpectrogram;
+            this.from = from;
+            this.to = to;
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= chunkSize) {
+                computeFrames();
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new FrameTask(frames, absoluteSpectrogram, from,
+                        middle, chunkSize), new FrameTask(frames,
+                        absoluteSpectrogram, middle, to, chunkSize));
+            }
+        }
+
+        void computeFrames() {
+            FastFourierTransform fft = frames.newTransform();
+            double[] signal = new double[frames.getFftSampleSize()];
+            int numFrequencyUnit = frames.getNumFrequencyUnit();
+            for (int f = from; f < to; f++) {
+                frames.getFrame(f, signal);
+                absoluteSpectrogram.setMagnitudes(fft, signal, f
+                        * numFrequencyUnit);
+            }
+        }
+    }
+
+    // what the sequential max/min scan needs from a range of intensities:
+    // that scan only compares a value to the min when it is not a new max
+    private static class AmplitudeRange {
+        double first; // first value, the smallest of the running maxima
+        double max = Double.NEGATIVE_INFINITY;
+        double minNotRecord = Double.MAX_VALUE; // min of the values which
+                                                // are not a running max
+    }
+
+    private static class AmplitudeRangeTask extends
+            RecursiveTask<AmplitudeRange> {
+
+        private static final long serialVersionUID = 1L;
+        private final Intensities<?> data;
+        private final int from, to;
+        private final int chunkSize;
+
+        AmplitudeRangeTask(Intensities<?> data, int from, int to,
+                int chunkSize) {
+            this.data = data;
+            this.from = from;
+            this.to = to;
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        protected AmplitudeRange compute() {
+            if (to - from <= chunkSize) {
+                AmplitudeRange range = new AmplitudeRange();
+                range.first = data.get(from);
+                for (int i = from; i < to; i++) {
+                    double value = data.get(i);
+                    if (value > range.max) {
+                        range.max = value;
+                    } else if (value < range.minNotRecord) {
+                        range.minNotRecord = value;
+                    }
+                }
+                return range;
+            }
+
+            int middle = (from + to) >>> 1;
+            AmplitudeRangeTask right = new AmplitudeRangeTask(data, middle,
+                    to, chunkSize);
+            right.fork();
+            AmplitudeRange left = new AmplitudeRangeTask(data, from, middle,
+                    chunkSize).compute();
+            AmplitudeRange rightRange = right.join();
+
+            // the running maxima of the right half which do not exceed the
+            // left max are compared to the min, the first one is the
+            // smallest of them
+            AmplitudeRange range = new AmplitudeRange();
+            range.first = left.first;
+            range.max = Math.max(left.max, rightRange.max);
+            range.minNotRecord = Math.min(left.minNotRecord,
+                    rightRange.minNotRecord);
+            if (rightRange.first <= left.max) {
+                range.minNotRecord = Math.min(range.minNotRecord,
+                        rightRange.first);
+            }
+            return range;
+        }
+    }
+
+    private static class NormalizationTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+        private final Intensities<?> absoluteSpectrogram;
+        private final Intensities<?> spectrogram;
+        private final double minAmp, diff;
+        private final int from, to;
+        private final int chunkSize;
+
+        NormalizationTask(Intensities<?> absoluteSpectrogram,
+                Intensities<?> spectrogram, double minAmp, double diff,
+                int from, int to, int chunkSize) {
+            this.absoluteSpectrogram = absoluteSpectrogram;
+            this.spectrogram = spectrogram;
+            this.minAmp = minAmp;
+            this.diff = diff;
+            this.from = from;
+            this.to = to;
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= chunkSize) {
+                normalize();
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new NormalizationTask(absoluteSpectrogram,
+                        spectrogram, minAmp, diff, from, middle, chunkSize),
+                        new NormalizationTask(absoluteSpectrogram, spectrogram,
+                                minAmp, diff, middle, to, chunkSize));
+            }
+        }
+
+        void normalize() {
+            for (int i = from; i < to; i++) {
+                double value = absoluteSpectrogram.get(i);
+                if (value < MIN_VALID_AMPLITUDE) {
+                    spectrogram.set(i, 0);
+                } else {
+                    spectrogram.set(i, (Math.log10(absoluteSpectrogram.divide(
+                            value, minAmp))) / diff);
+                }
+            }
+        }
+    }
+}
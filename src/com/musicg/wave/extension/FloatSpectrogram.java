@@ -0,0 +1,232 @@
+/*
+ * Copyright (C) 2011 Jacquet Wong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.musicg.wave.extension;
+
+import com.musicg.wave.Wave;
+
+/**
+ * Handles the wave data in frequency-time domain, stored in single
+ * precision. Takes half the memory of {@link Spectrogram}; the amplitudes are
+ * in the 16 bit range so the positions of the peaks are the same.
+ *
+ * @author Jacquet Wong
+ */
+public class FloatSpectrogram extends ArraySpectrogram<float[]> {
+
+    /**
+     * Constructor.
+     *
+     * @param wave
+     *            a WAV file
+     */
+    public FloatSpectrogram(Wave wave) {
+        this(wave, new SpectrogramSettings());
+    }
+
+    /**
+     * Constructor
+     *
+     * @param wave
+     *            WAV file
+     * @param fftSampleSize
+     *            number of sample in fft, the value needed to be a number to
+     *            power of 2
+     * @param overlapFactor
+     *            1/overlapFactor overlapping, e.g. 1/4=25% overlapping, 0 for
+     *            no overlapping
+     */
+    public FloatSpectrogram(Wave wave, int fftSampleSize, int overlapFactor) {
+        this(wave, new SpectrogramSettings(fftSampleSize, overlapFactor));
+    }
+
+    /**
+     * Constructor
+     *
+     * @param wave
+     *            WAV file
+     * @param settings
+     *            FFT sample size, overlap factor, transform and window of the
+     *            frames
+     */
+    public FloatSpectrogram(Wave wave, SpectrogramSettings settings) {
+        init(wave, settings);
+        buildSpectrogram(null, 0);
+    }
+
+    /**
+     * Constructor, from amplitudes already decoded
+     *
+     * @param amplitudes
+     *            amplitudes of the signal
+     * @param sampleRate
+     *            sample rate of the amplitudes
+     * @param fftSampleSize
+     *            number of sample in fft, the value needed to be a number to
+     *            power of 2
+     * @param overlapFactor
+     *            1/overlapFactor overlapping, e.g. 1/4=25% overlapping, 0 for
+     *            no overlapping
+     */
+    public FloatSpectrogram(short[] amplitudes, int sampleRate,
+            int fftSampleSize, int overlapFactor) {
+        this(amplitudes, sampleRate, new SpectrogramSettings(fftSampleSize,
+                overlapFactor));
+    }
+
+    /**
+     * Constructor, from amplitudes already decoded
+     *
+     * @param amplitudes
+     *            amplitudes of the signal
+     * @param sampleRate
+     *            sample rate of the amplitudes
+     * @param settings
+     *            FFT sample size, overlap factor, transform and window of the
+     *            frames
+     */
+    public FloatSpectrogram(short[] amplitudes, int sampleRate,
+            SpectrogramSettings settings) {
+        init(amplitudes, null, sampleRate, (float) amplitudes.length
+                / sampleRate, settings);
+        buildSpectrogram(null, 0);
+    }
+
+    /**
+     * Constructor, from single precision amplitudes, e.g. the ones of a 24
+     * bit wave
+     *
+     * @param amplitudes
+     *            amplitudes of the signal, in the range of 16 bit amplitudes
+     * @param sampleRate
+     *            sample rate of the amplitudes
+     * @param fftSampleSize
+     *            number of sample in fft, the value needed to be a number to
+     *            power of 2
+     * @param overlapFactor
+     *            1/overlapFactor overlapping, e.g. 1/4=25% overlapping, 0 for
+     *            no overlapping
+     */
+    public FloatSpectrogram(float[] amplitudes, int sampleRate,
+            int fftSampleSize, int overlapFactor) {
+        this(amplitudes, sampleRate, new SpectrogramSettings(fftSampleSize,
+                overlapFactor));
+    }
+
+    /**
+     * Constructor, from single precision amplitudes, e.g. the ones of a 24
+     * bit wave
+     *
+     * @param amplitudes
+     *            amplitudes of the signal, in the range of 16 bit amplitudes
+     * @param sampleRate
+     *            sample rate of the amplitudes
+     * @param settings
+     *            FFT sample size, overlap factor, transform and window of the
+     *            frames
+     */
+    public FloatSpectrogram(float[] amplitudes, int sampleRate,
+            SpectrogramSettings settings) {
+        init(null, amplitudes, sampleRate, (float) amplitudes.length
+                / sampleRate, settings);
+        buildSpectrogram(null, 0);
+    }
+
+    @Override
+    Intensities<float[]> newIntensities(int length) {
+        return new FloatIntensities(length);
+    }
+
+    /**
+     * Get spectrogram: spectrogram[time][frequency]=intensity. This is a copy
+     * of the row-major data, see {@link #getNormalizedSpectrogramArray()}
+     *
+     * @return logarithm normalized spectrogram
+     */
+    public float[][] getNormalizedSpectrogramData() {
+        float[] spectrogram = getNormalizedArray();
+        if (spectrogram == null) {
+            return null;
+        }
+        return toFrames(spectrogram);
+    }
+
+    /**
+     * Get spectrogram: spectrogram[time][frequency]=intensity. This is a copy
+     * of the row-major data, see {@link #getAbsoluteSpectrogramArray()}
+     *
+     * @return absolute spectrogram
+     */
+    public float[][] getAbsoluteSpectrogramData() {
+        return toFrames(getAbsoluteArray());
+    }
+
+    private float[][] toFrames(float[] data) {
+        int numFrames = getNumFrames();
+        int numFrequencyUnit = getNumFrequencyUnit();
+        float[][] frames = new float[numFrames][];
+        for (int f = 0; f < numFrames; f++) {
+            frames[f] = new float[numFrequencyUnit];
+            System.arraycopy(data, f * numFrequencyUnit, frames[f], 0,
+                    numFrequencyUnit);
+        }
+        return frames;
+    }
+
+    /**
+     * Get spectrogram in row-major order, the intensity of a frequency unit
+     * in a frame is at getRowOffset(frame) + frequencyUnit. The array is not
+     * copied.
+     *
+     * @return logarithm normalized spectrogram, null if there is no frame
+     */
+    public float[] getNormalizedSpectrogramArray() {
+        return getNormalizedArray();
+    }
+
+    /**
+     * Get spectrogram in row-major order, the intensity of a frequency unit
+     * in a frame is at getRowOffset(frame) + frequencyUnit. The array is not
+     * copied.
+     *
+     * @return absolute spectrogram
+     */
+    public float[] getAbsoluteSpectrogramArray() {
+        return getAbsoluteArray();
+    }
+
+    /**
+     * @param frame
+     *            frame number
+     * @param frequencyUnit
+     *            frequency unit
+     * @return logarithm normalized intensity
+     */
+    public float getNormalizedIntensity(int frame, int frequencyUnit) {
+        return getNormalizedArray()[getRowOffset(frame) + frequencyUnit];
+    }
+
+    /**
+     * @param frame
+     *            frame number
+     * @param frequencyUnit
+     *            frequency unit
+     * @return absolute intensity
+     */
+    public float getAbsoluteIntensity(int frame, int frequencyUnit) {
+        return getAbsoluteArray()[getRowOffset(frame) + frequencyUnit];
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2011 Jacquet Wong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.musicg.wave.extension;
+
+import java.nio.DoubleBuffer;
+
+/**
+ * Cuts the amplitudes of a wave into the frames of a spectrogram. Overlapping
+ * frames start every hop size samples and are read straight from the
+ * amplitudes, no overlapped copy of the samples is made.
+ *
+ * @author Jacquet Wong
+ */
+class FrameSampler {
+
+    private final short[] amplitudes;
+    private final float[] floatAmplitudes; // instead of amplitudes
+    private final int numSamples;
+    private final int fftSampleSize;
+    private final int hopSize;
+    private final int numFrames;
+    private final int numCompleteFrames; // frames having all their samples
+    private final boolean overlapping;
+
+    /**
+     * @param amplitudes
+     *            amplitudes of the wave
+     * @param fftSampleSize
+     *            number of sample in a frame
+     * @param overlapFactor
+     *            1/overlapFactor overlapping, 0 or 1 for no overlapping
+     */
+    FrameSampler(short[] amplitudes, int fftSampleSize, int overlapFactor) {
+        this(amplitudes, null, amplitudes.length, fftSampleSize, overlapFactor);
+    }
+
+    /**
+     * @param amplitudes
+     *            single precision amplitudes of the wave
+     * @param fftSampleSize
+     *            number of sample in a frame
+     * @param overlapFactor
+     *            1/overlapFactor overlapping, 0 or 1 for no overlapping
+     */
+    FrameSampler(float[] amplitudes, int fftSampleSize, int overlapFactor) {
+        this(null, amplitudes, amplitudes.length, fftSampleSize, overlapFactor);
+    }
+
+    private FrameSampler(short[] amplitudes, float[] floatAmplitudes,
+            int numSamples, int fftSampleSize, int overlapFactor) {
+        this.amplitudes = amplitudes;
+        this.floatAmplitudes = floatAmplitudes;
+        this.numSamples = numSamples;
+        this.fftSampleSize = fftSampleSize;
+
+        overlapping = overlapFactor > 1;
+        if (overlapping) {
+            int backSamples = fftSampleSize * (overlapFactor - 1)
+                    / overlapFactor;
+            hopSize = fftSampleSize - backSamples;
+            numFrames = (int) ((long) numSamples * overlapFactor / fftSampleSize);
+            // frame f is complete when f * hopSize + fftSampleSize - 1 <=
+            // numSamples
+            int lastStart = numSamples - fftSampleSize + 1;
+            numCompleteFrames = lastStart < 0 ? 0 : lastStart / hopSize + 1;
+        } else {
+            hopSize = fftSampleSize;
+            numFrames = numSamples / fftSampleSize;
+            numCompleteFrames = numFrames;
+        }
+    }
+
+    /**
+     * @return number of frames
+     */
+    int getNumFrames() {
+        return numFrames;
+    }
+
+    /**
+     * @return number of samples between the starts of two frames
+     */
+    int getHopSize() {
+        return hopSize;
+    }
+
+    /**
+     * Get the windowed signal of a frame
+     *
+     * @param frame
+     *            frame number
+     * @param window
+     *            window applied to the samples
+     * @param signal
+     *            destination of fftSampleSize windowed samples
+     */
+    void getFrame(int frame, DoubleBuffer window, double[] signal) {
+        int startSample = frame * hopSize;
+
+        if (frame < numCompleteFrames) {
+            int last = fftSampleSize - 1;
+            copy(startSample, last, window, signal);
+            // an overlapped frame ends with the last sample of its hop, the
+            // way the frames have always been laid out
+            int lastSample = overlapping ? startSample + hopSize - 1
+                    : startSample + last;
+            signal[last] = getAmplitude(lastSample) * window.get(last);
+        } else {
+            // only the first incomplete frame has samples, the frames after
+            // it are silent
+            int available = frame == numCompleteFrames ? Math.max(
+                    numSamples - startSample, 0) : 0;
+            available = Math.min(available, fftSampleSize - 1);
+            copy(startSample, available, window, signal);
+            for (int n = available; n < fftSampleSize; n++) {
+                signal[n] = 0;
+            }
+        }
+    }
+
+    // windowed samples from startSample into signal[0..length-1]
+    private void copy(int startSample, int length, DoubleBuffer window,
+            double[] signal) {
+        if (floatAmplitudes != null) {
+            for (int n = 0; n < length; n++) {
+                signal[n] = floatAmplitudes[startSample + n] * window.get(n);
+            }
+        } else {
+            for (int n = 0; n < length; n++) {
+                signal[n] = amplitudes[startSample + n] * window.get(n);
+            }
+        }
+    }
+
+    private double getAmplitude(int sample) {
+        return floatAmplitudes != null ? floatAmplitudes[sample]
+                : amplitudes[sample];
+    }
+}
@@ -0,0 +1,278 @@
+/*
+ * Copyright (C) 2011 Jacquet Wong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.musicg.wave.extension;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.musicg.dsp.FastFourierTransform;
+import com.musicg.wave.Wave;
+
+/**
+ * Handles the wave data in frequency-time domain, computing the frames on
+ * demand, with the intensities of the {@link Spectrogram} of the same
+ * settings. The most recently used frames are kept in a bounded cache. The
+ * statistics needed for the normalization are computed on the first request
+ * of a normalized intensity, in one pass which does not keep the frames.
+ *
+ * @author Jacquet Wong
+ */
+public class LazySpectrogram extends AbstractSpectrogram {
+
+    /**
+     * Default number of frames kept in the cache
+     */
+    public static final int LAZY_SPECTROGRAM_DEFAULT_CACHE_SIZE = 256;
+
+    private FastFourierTransform fft;
+    private FrameCache cache; // absolute frames
+    private boolean normalizationReady = false;
+    private double minAmp; // normalization statistics
+    private double diff;
+
+    /**
+     * Constructor.
+     *
+     * @param wave
+     *            a WAV file
+     */
+    public LazySpectrogram(Wave wave) {
+        this(wave, new SpectrogramSettings(),
+                LAZY_SPECTROGRAM_DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param wave
+     *            WAV file
+     * @param fftSampleSize
+     *            number of sample in fft, the value needed to be a number to
+     *            power of 2
+     * @param overlapFactor
+     *            1/overlapFactor overlapping, e.g. 1/4=25% overlapping, 0 for
+     *            no overlapping
+     * @param cacheSize
+     *            max. number of frames kept in memory
+     */
+    public LazySpectrogram(Wave wave, int fftSampleSize, int overlapFactor,
+            int cacheSize) {
+        this(wave, new SpectrogramSettings(fftSampleSize, overlapFactor),
+                cacheSize);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param wave
+     *            WAV file
+     * @param settings
+     *            FFT sample size, overlap factor, transform and window of the
+     *            frames
+     * @param cacheSize
+     *            max. number of frames kept in memory
+     */
+    public LazySpectrogram(Wave wave, SpectrogramSettings settings,
+            int cacheSize) {
+        init(wave, settings);
+        initCache(cacheSize);
+    }
+
+    /**
+     * Constructor, from amplitudes already decoded
+     *
+     * @param amplitudes
+     *            amplitudes of the signal
+     * @param sampleRate
+     *            sample rate of the amplitudes
+     * @param fftSampleSize
+     *            number of sample in fft, the value needed to be a number to
+     *            power of 2
+     * @param overlapFactor
+     *            1/overlapFactor overlapping, e.g. 1/4=25% overlapping, 0 for
+     *            no overlapping
+     * @param cacheSize
+     *            max. number of frames kept in memory
+     */
+    public LazySpectrogram(short[] amplitudes, int sampleRate,
+            int fftSampleSize, int overlapFactor, int cacheSize) {
+        this(amplitudes, sampleRate, new SpectrogramSettings(fftSampleSize,
+                overlapFactor), cacheSize);
+    }
+
+    /**
+     * Constructor, from amplitudes already decoded
+     *
+     * @param amplitudes
+     *            amplitudes of the signal
+     * @param sampleRate
+     *            sample rate of the amplitudes
+     * @param settings
+     *            FFT sample size, overlap factor, transform and window of the
+     *            frames
+     * @param cacheSize
+     *            max. number of frames kept in memory
+     */
+    public LazySpectrogram(short[] amplitudes, int sampleRate,
+            SpectrogramSettings settings, int cacheSize) {
+        init(amplitudes, null, sampleRate, (float) amplitudes.length
+                / sampleRate, settings);
+        initCache(cacheSize);
+    }
+
+    private void initCache(int cacheSize) {
+        this.cache = new FrameCache(Math.max(cacheSize, 1));
+        this.fft = newTransform();
+    }
+
+    // window the signal of the frame and do fft on it
+    private void computeFrame(int frame, double[] signal, double[] mag) {
+        getFrame(frame, signal);
+        fft.getMagnitudes(signal, mag, 0);
+    }
+
+    // the same statistics as Spectrogram, frame after frame
+    private void computeNormalization() {
+        int numFrames = getNumFrames();
+        int numFrequencyUnit = getNumFrequencyUnit();
+        double[] signal = new double[getFftSampleSize()];
+        double[] mag = new double[numFrequencyUnit];
+
+        // set max and min amplitudes
+        double maxAmp = Double.MIN_VALUE;
+        double minAmp = Double.MAX_VALUE;
+        for (int f = 0; f < numFrames; f++) {
+            double[] frame = cache.get(f);
+            if (frame == null) {
+                computeFrame(f, signal, mag);
+                frame = mag;
+            }
+            for (int j = 0; j < numFrequencyUnit; j++) {
+                if (frame[j] > maxAmp) {
+                    maxAmp = frame[j];
+                } else if (frame[j] < minAmp) {
+                    minAmp = frame[j];
+                }
+            }
+        }
+        // end set max and min amplitudes
+
+        // avoiding divided by zero
+        if (minAmp == 0) {
+            minAmp = MIN_VALID_AMPLITUDE;
+        }
+
+        this.minAmp = minAmp;
+        this.diff = Math.log10(maxAmp / minAmp); // perceptual difference
+        normalizationReady = true;
+    }
+
+    /**
+     * Get the absolute intensities of a frame, computed if it is not in the
+     * cache. The returned array is shared with the cache and must not be
+     * modified.
+     *
+     * @param frame
+     *            frame number
+     * @return absolute spectrum of the frame: spectrum[frequency]=intensity
+     */
+    public synchronized double[] getAbsoluteFrame(int frame) {
+        if (frame < 0 || frame >= getNumFrames()) {
+            throw new IndexOutOfBoundsException("Frame " + frame
+                    + " out of range 0.." + (getNumFrames() - 1));
+        }
+        double[] mag = cache.get(frame);
+        if (mag == null) {
+            mag = new double[getNumFrequencyUnit()];
+            computeFrame(frame, new double[getFftSampleSize()], mag);
+            cache.put(frame, mag);
+        }
+        return mag;
+    }
+
+    /**
+     * Get the logarithm normalized intensities of a frame. The first call
+     * runs through all the frames once to get the normalization statistics.
+     *
+     * @param frame
+     *            frame number
+     * @return normalized spectrum of the frame: spectrum[frequency]=intensity
+     */
+    public synchronized double[] getNormalizedFrame(int frame) {
+        double[] absoluteFrame = getAbsoluteFrame(frame);
+        if (!normalizationReady) {
+            computeNormalization();
+        }
+
+        double[] normalizedFrame = new double[absoluteFrame.length];
+        for (int j = 0; j < absoluteFrame.length; j++) {
+            if (absoluteFrame[j] < MIN_VALID_AMPLITUDE) {
+                normalizedFrame[j] = 0;
+            } else {
+                normalizedFrame[j] = (Math.log10(absoluteFrame[j] / minAmp))
+                        / diff;
+            }
+        }
+        return normalizedFrame;
+    }
+
+    /**
+     * @param frame
+     *            frame number
+     * @param frequencyUnit
+     *            frequency unit
+     * @return absolute intensity
+     */
+    public double getAbsoluteIntensity(int frame, int frequencyUnit) {
+        return getAbsoluteFrame(frame)[frequencyUnit];
+    }
+
+    /**
+     * @param frame
+     *            frame number
+     * @param frequencyUnit
+     *            frequency unit
+     * @return logarithm normalized intensity
+     */
+    public double getNormalizedIntensity(int frame, int frequencyUnit) {
+        return getNormalizedFrame(frame)[frequencyUnit];
+    }
+
+    /**
+     * @return number of frames currently in the cache
+     */
+    public synchronized int getNumCachedFrames() {
+        return cache.size();
+    }
+
+    // least recently used frames are dropped first
+    private static class FrameCache extends LinkedHashMap<Integer, double[]> {
+
+        private static final long serialVersionUID = 1L;
+        private final int maxSize;
+
+        FrameCache(int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, double[]> eldest) {
+            return size() > maxSize;
+        }
+    }
+}
@@ -16,6 +16,7 @@
 
 package com.musicg.wave.extension;
 
+import com.musicg.wave.SampleDecoder;
 import com.musicg.wave.Wave;
 
 /**
@@ -45,6 +46,16 @@ public class NormalizedSampleAmplitudes {
      */
     public double[] getNormalizedAmplitudes() {
 
+        if (normalizedAmplitudes == null
+                && SampleDecoder.isHighResolution(wave.getWaveHeader())) {
+            // decoded in the range of 16 bit amplitudes
+            float[] amplitudes = wave.getSharedFloatSampleAmplitudes(null);
+            normalizedAmplitudes = new double[amplitudes.length];
+            for (int i = 0; i < amplitudes.length; i++) {
+                normalizedAmplitudes[i] = amplitudes[i] / 32768.0;
+            }
+        }
+
         if (normalizedAmplitudes == null) {
 
             boolean signed = true;
@@ -54,7 +65,7 @@ public class NormalizedSampleAmplitudes {
                 signed = false;
             }
 
-            short[] amplitudes = wave.getSampleAmplitudes();
+            short[] amplitudes = wave.getSharedSampleAmplitudes(null);
             int numSamples = amplitudes.length;
             int maxAmplitude = 1 << (wave.getWaveHeader().getBitsPerSample() - 1);
 
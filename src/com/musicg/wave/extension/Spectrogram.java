@@ -16,8 +16,8 @@
 
 package com.musicg.wave.extension;
 
-import com.musicg.dsp.FastFourierTransform;
-import com.musicg.dsp.WindowFunction;
+import java.util.concurrent.ForkJoinPool;
+
 import com.musicg.wave.Wave;
 
 /**
@@ -25,7 +25,7 @@ import com.musicg.wave.Wave;
  *
  * @author Jacquet Wong
  */
-public class Spectrogram {
+public class Spectrogram extends ArraySpectrogram<double[]> {
 
     /**
      * Default Spectrogram FFT sample size
@@ -36,18 +36,10 @@ public class Spectrogram {
      */
     public static final int SPECTROGRAM_DEFAULT_OVERLAP_FACTOR = 0; // 0 for no
                                                                     // overlapping
-
-    private Wave wave;
-    private double[][] spectrogram; // relative spectrogram
-    private double[][] absoluteSpectrogram; // absolute spectrogram
-    private int fftSampleSize; // number of sample in fft, the value needed to
-                               // be a number to power of 2
-    private int overlapFactor; // 1/overlapFactor overlapping, e.g. 1/4=25%
-                               // overlapping
-    private int numFrames; // number of frames of the spectrogram
-    private int framesPerSecond; // frame per second of the spectrogram
-    private int numFrequencyUnit; // number of y-axis unit
-    private double unitFrequency; // frequency per y-axis unit
+    /**
+     * Default number of frames computed by one task of a parallel build
+     */
+    public static final int SPECTROGRAM_DEFAULT_CHUNK_SIZE = 64;
 
     /**
      * Constructor.
@@ -56,11 +48,7 @@ public class Spectrogram {
      *            a WAV file
      */
     public Spectrogram(Wave wave) {
-        this.wave = wave;
-        // default
-        this.fftSampleSize = SPECTROGRAM_DEFAULT_FFT_SAMPLE_SIZE;
-        this.overlapFactor = SPECTROGRAM_DEFAULT_OVERLAP_FACTOR;
-        buildSpectrogram();
+        this(wave, new SpectrogramSettings());
     }
 
     /**
@@ -76,179 +64,220 @@ public class Spectrogram {
      *            no overlapping
      */
     public Spectrogram(Wave wave, int fftSampleSize, int overlapFactor) {
-        this.wave = wave;
-
-        if (Integer.bitCount(fftSampleSize) == 1) {
-            this.fftSampleSize = fftSampleSize;
-        } else {
-            System.err.print("The input number must be a power of 2");
-            this.fftSampleSize = SPECTROGRAM_DEFAULT_FFT_SAMPLE_SIZE;
-        }
+        this(wave, new SpectrogramSettings(fftSampleSize, overlapFactor));
+    }
 
-        this.overlapFactor = overlapFactor;
+    /**
+     * Constructor
+     * 
+     * @param wave
+     *            WAV file
+     * @param settings
+     *            FFT sample size, overlap factor and transform of the frames
+     */
+    public Spectrogram(Wave wave, SpectrogramSettings settings) {
+        init(wave, settings);
+        buildSpectrogram();
+    }
 
+    /**
+     * Constructor, from amplitudes already decoded
+     * 
+     * @param amplitudes
+     *            amplitudes of the signal
+     * @param sampleRate
+     *            sample rate of the amplitudes
+     * @param settings
+     *            FFT sample size, overlap factor and transform of the frames
+     */
+    public Spectrogram(short[] amplitudes, int sampleRate,
+            SpectrogramSettings settings) {
+        init(amplitudes, null, sampleRate, (float) amplitudes.length
+                / sampleRate, settings);
         buildSpectrogram();
     }
 
     /**
-     * Build spectrogram
+     * Constructor, from single precision amplitudes, e.g. the ones of a 24
+     * bit wave
+     * 
+     * @param amplitudes
+     *            amplitudes of the signal, in the range of 16 bit amplitudes
+     * @param sampleRate
+     *            sample rate of the amplitudes
+     * @param settings
+     *            FFT sample size, overlap factor and transform of the frames
      */
-    private void buildSpectrogram() {
+    public Spectrogram(float[] amplitudes, int sampleRate,
+            SpectrogramSettings settings) {
+        init(null, amplitudes, sampleRate, (float) amplitudes.length
+                / sampleRate, settings);
+        buildSpectrogram();
+    }
 
-        short[] amplitudes = wave.getSampleAmplitudes();
-        int numSamples = amplitudes.length;
-
-        int pointer = 0;
-        // overlapping
-        if (overlapFactor > 1) {
-            int numOverlappedSamples = numSamples * overlapFactor;
-            int backSamples = fftSampleSize * (overlapFactor - 1)
-                    / overlapFactor;
-            int fftSampleSize_1 = fftSampleSize - 1;
-            short[] overlapAmp = new short[numOverlappedSamples];
-            pointer = 0;
-            for (int i = 0; i < amplitudes.length; i++) {
-                overlapAmp[pointer++] = amplitudes[i];
-                if (pointer % fftSampleSize == fftSampleSize_1) {
-                    // overlap
-                    i -= backSamples;
-                }
-            }
-            numSamples = numOverlappedSamples;
-            amplitudes = overlapAmp;
-        }
-        // end overlapping
+    /**
+     * Constructor, the frames are computed in parallel. The result is the
+     * same as the one of a sequential build.
+     * 
+     * @param wave
+     *            WAV file
+     * @param fftSampleSize
+     *            number of sample in fft, the value needed to be a number to
+     *            power of 2
+     * @param overlapFactor
+     *            1/overlapFactor overlapping, e.g. 1/4=25% overlapping, 0 for
+     *            no overlapping
+     * @param pool
+     *            pool running the frames, null for the common pool
+     * @param chunkSize
+     *            number of frames computed by one task
+     */
+    public Spectrogram(Wave wave, int fftSampleSize, int overlapFactor,
+            ForkJoinPool pool, int chunkSize) {
+        this(wave, new SpectrogramSettings(fftSampleSize, overlapFactor),
+                pool, chunkSize);
+    }
 
-        numFrames = numSamples / fftSampleSize;
-        framesPerSecond = (int) (numFrames / wave.length());
+    /**
+     * Constructor, the frames are computed in parallel. The result is the
+     * same as the one of a sequential build.
+     * 
+     * @param wave
+     *            WAV file
+     * @param settings
+     *            FFT sample size, overlap factor and transform of the frames
+     * @param pool
+     *            pool running the frames, null for the common pool
+     * @param chunkSize
+     *            number of frames computed by one task
+     */
+    public Spectrogram(Wave wave, SpectrogramSettings settings,
+            ForkJoinPool pool, int chunkSize) {
+        init(wave, settings);
+        buildParallel(pool, chunkSize);
+    }
 
-        // set signals for fft
-        WindowFunction window = new WindowFunction();
-        window.setWindowType("Hamming");
-        double[] win = window.generate(fftSampleSize);
+    /**
+     * Constructor, from amplitudes already decoded. The frames are computed
+     * in parallel, the result is the same as the one of a sequential build.
+     * 
+     * @param amplitudes
+     *            amplitudes of the signal
+     * @param sampleRate
+     *            sample rate of the amplitudes
+     * @param settings
+     *            FFT sample size, overlap factor and transform of the frames
+     * @param pool
+     *            pool running the frames, null for the common pool
+     * @param chunkSize
+     *            number of frames computed by one task
+     */
+    public Spectrogram(short[] amplitudes, int sampleRate,
+            SpectrogramSettings settings, ForkJoinPool pool, int chunkSize) {
+        init(amplitudes, null, sampleRate, (float) amplitudes.length
+                / sampleRate, settings);
+        buildParallel(pool, chunkSize);
+    }
 
-        double[][] signals = new double[numFrames][];
-        for (int f = 0; f < numFrames; f++) {
-            signals[f] = new double[fftSampleSize];
-            int startSample = f * fftSampleSize;
-            for (int n = 0; n < fftSampleSize; n++) {
-                signals[f][n] = amplitudes[startSample + n] * win[n];
-            }
-        }
-        // end set signals for fft
+    /**
+     * Build spectrogram
+     */
+    private void buildSpectrogram() {
+        buildSpectrogram(null, 0);
+    }
 
-        absoluteSpectrogram = new double[numFrames][];
-        // for each frame in signals, do fft on it
-        FastFourierTransform fft = new FastFourierTransform();
-        for (int i = 0; i < numFrames; i++) {
-            absoluteSpectrogram[i] = fft.getMagnitudes(signals[i]);
+    /**
+     * Build spectrogram in parallel, in the common pool if no pool is given
+     */
+    private void buildParallel(ForkJoinPool pool, int chunkSize) {
+        if (pool == null) {
+            pool = ForkJoinPool.commonPool();
         }
+        buildSpectrogram(pool, Math.max(chunkSize, 1));
+    }
 
-        if (absoluteSpectrogram.length > 0) {
-
-            numFrequencyUnit = absoluteSpectrogram[0].length;
-            unitFrequency = (double) wave.getWaveHeader().getSampleRate() / 2
-                    / numFrequencyUnit; // frequency could be caught within the
-                                        // half of nSamples according to Nyquist
-                                        // theory
-
-            // normalization of absoultSpectrogram
-            spectrogram = new double[numFrames][numFrequencyUnit];
-
-            // set max and min amplitudes
-            double maxAmp = Double.MIN_VALUE;
-            double minAmp = Double.MAX_VALUE;
-            for (int i = 0; i < numFrames; i++) {
-                for (int j = 0; j < numFrequencyUnit; j++) {
-                    if (absoluteSpectrogram[i][j] > maxAmp) {
-                        maxAmp = absoluteSpectrogram[i][j];
-                    } else if (absoluteSpectrogram[i][j] < minAmp) {
-                        minAmp = absoluteSpectrogram[i][j];
-                    }
-                }
-            }
-            // end set max and min amplitudes
-
-            // normalization
-            // avoiding divided by zero
-            double minValidAmp = 0.00000000001F;
-            if (minAmp == 0) {
-                minAmp = minValidAmp;
-            }
-
-            double diff = Math.log10(maxAmp / minAmp); // perceptual difference
-            for (int i = 0; i < numFrames; i++) {
-                for (int j = 0; j < numFrequencyUnit; j++) {
-                    if (absoluteSpectrogram[i][j] < minValidAmp) {
-                        spectrogram[i][j] = 0;
-                    } else {
-                        spectrogram[i][j] = (Math
-                                .log10(absoluteSpectrogram[i][j] / minAmp))
-                                / diff;
-                    }
-                }
-            }
-            // end normalization
-        }
+    @Override
+    Intensities<double[]> newIntensities(int length) {
+        return new DoubleIntensities(length);
     }
 
     /**
-     * Get spectrogram: spectrogram[time][frequency]=intensity
+     * Get spectrogram: spectrogram[time][frequency]=intensity. This is a copy
+     * of the row-major data, see {@link #getNormalizedSpectrogramArray()}
      * 
      * @return logarithm normalized spectrogram
      */
     public double[][] getNormalizedSpectrogramData() {
-        return spectrogram;
+        double[] spectrogram = getNormalizedArray();
+        if (spectrogram == null) {
+            return null;
+        }
+        return toFrames(spectrogram);
     }
 
     /**
-     * Get spectrogram: spectrogram[time][frequency]=intensity
+     * Get spectrogram: spectrogram[time][frequency]=intensity. This is a copy
+     * of the row-major data, see {@link #getAbsoluteSpectrogramArray()}
      * 
      * @return absolute spectrogram
      */
     public double[][] getAbsoluteSpectrogramData() {
-        return absoluteSpectrogram;
+        return toFrames(getAbsoluteArray());
     }
 
-    /**
-     * @return number of frames
-     */
-    public int getNumFrames() {
-        return numFrames;
-    }
-
-    /**
-     * @return frames per second
-     */
-    public int getFramesPerSecond() {
-        return framesPerSecond;
+    private double[][] toFrames(double[] data) {
+        int numFrames = getNumFrames();
+        int numFrequencyUnit = getNumFrequencyUnit();
+        double[][] frames = new double[numFrames][];
+        for (int f = 0; f < numFrames; f++) {
+            frames[f] = new double[numFrequencyUnit];
+            System.arraycopy(data, f * numFrequencyUnit, frames[f], 0,
+                    numFrequencyUnit);
+        }
+        return frames;
     }
 
     /**
-     * @return number of frequeny unit
+     * Get spectrogram in row-major order, the intensity of a frequency unit
+     * in a frame is at getRowOffset(frame) + frequencyUnit. The array is not
+     * copied.
+     * 
+     * @return logarithm normalized spectrogram, null if there is no frame
      */
-    public int getNumFrequencyUnit() {
-        return numFrequencyUnit;
+    public double[] getNormalizedSpectrogramArray() {
+        return getNormalizedArray();
     }
 
     /**
-     * @return unit frequency
+     * Get spectrogram in row-major order, the intensity of a frequency unit
+     * in a frame is at getRowOffset(frame) + frequencyUnit. The array is not
+     * copied.
+     * 
+     * @return absolute spectrogram
      */
-    public double getUnitFrequency() {
-        return unitFrequency;
+    public double[] getAbsoluteSpectrogramArray() {
+        return getAbsoluteArray();
     }
 
     /**
-     * @return FFT sample size
+     * @param frame
+     *            frame number
+     * @param frequencyUnit
+     *            frequency unit
+     * @return logarithm normalized intensity
      */
-    public int getFftSampleSize() {
-        return fftSampleSize;
+    public double getNormalizedIntensity(int frame, int frequencyUnit) {
+        return getNormalizedArray()[getRowOffset(frame) + frequencyUnit];
     }
 
     /**
-     * @return overlap factor
+     * @param frame
+     *            frame number
+     * @param frequencyUnit
+     *            frequency unit
+     * @return absolute intensity
      */
-    public int getOverlapFactor() {
-        return overlapFactor;
+    public double getAbsoluteIntensity(int frame, int frequencyUnit) {
+        return getAbsoluteArray()[getRowOffset(frame) + frequencyUnit];
     }
 }
\ No newline at end of file
@@ -0,0 +1,321 @@
+/*
+ * Copyright (C) 2011 Jacquet Wong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.musicg.wave.extension;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.musicg.wave.Wave;
+
+/**
+ * Cache of the spectrograms of waves, keyed by the wave and the settings of
+ * the spectrogram, bounded by the bytes of the spectrograms kept. The least
+ * recently used spectrograms are dropped first, and a spectrogram larger
+ * than the whole budget is not kept at all.
+ *
+ * A spectrogram is cached for the data of the wave it was built from: once
+ * the data changes (see {@link Wave#getDataVersion()}) the spectrogram is
+ * never returned again and is replaced by the next one built. The waves are
+ * weakly referenced, the cache does not keep them alive, and the
+ * spectrograms of the waves collected are dropped on the next access.
+ *
+ * The spectrograms returned are shared, their data must not be modified.
+ *
+ * @author Jacquet Wong
+ */
+public class SpectrogramCache {
+
+    /**
+     * Default max. bytes of the spectrograms kept, 64MB
+     */
+    public static final long DEFAULT_MAX_BYTES = 64L << 20;
+
+    private static final SpectrogramCache defaultCache = new SpectrogramCache(
+            DEFAULT_MAX_BYTES);
+
+    private final long maxBytes;
+    private final LinkedHashMap<Key, Spectrogram> entries;
+    private final ReferenceQueue<Wave> collectedWaves;
+    private long bytes;
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+    private long invalidationCount;
+
+    /**
+     * Constructor
+     *
+     * @param maxBytes
+     *            max. bytes of the spectrograms kept
+     */
+    public SpectrogramCache(long maxBytes) {
+        if (maxBytes < 1) {
+            throw new IllegalArgumentException("Invalid cache size "
+                    + maxBytes);
+        }
+        this.maxBytes = maxBytes;
+        // least recently used first
+        this.entries = new LinkedHashMap<Key, Spectrogram>(16, 0.75f, true);
+        this.collectedWaves = new ReferenceQueue<Wave>();
+    }
+
+    /**
+     * @return the cache shared by the waves, see {@link Wave#getSpectrogram()}
+     */
+    public static SpectrogramCache getDefault() {
+        return defaultCache;
+    }
+
+    /**
+     * Get the spectrogram of a wave, built on the first request
+     *
+     * @param wave
+     *            the wave
+     * @param settings
+     *            settings of the spectrogram
+     * @return the shared spectrogram
+     */
+    public Spectrogram getSpectrogram(Wave wave, SpectrogramSettings settings) {
+        Key key = new Key(wave, settings, null);
+        synchronized (this) {
+            removeCollected();
+            Spectrogram spectrogram = entries.get(key);
+            if (spectrogram != null) {
+                hitCount++;
+                return spectrogram;
+            }
+            missCount++;
+        }
+
+        // built out of the lock, the other waves stay available meanwhile
+        Spectrogram spectrogram = new Spectrogram(wave, settings);
+
+        long size = getSize(spectrogram);
+        synchronized (this) {
+            removeCollected();
+            removeFormerData(wave);
+            if (size <= maxBytes) {
+                Key entryKey = new Key(wave, settings, collectedWaves);
+                Spectrogram former = entries.put(entryKey, spectrogram);
+                if (former != null) {
+                    // built meanwhile by another thread
+                    bytes -= getSize(former);
+                }
+                bytes += size;
+                evict();
+            }
+        }
+        return spectrogram;
+    }
+
+    // bytes of the data of a spectrogram
+    private static long getSize(Spectrogram spectrogram) {
+        double[] normalized = spectrogram.getNormalizedSpectrogramArray();
+        long numValues = spectrogram.getAbsoluteSpectrogramArray().length
+                + (normalized != null ? normalized.length : 0);
+        return numValues * 8;
+    }
+
+    // drop the least recently used spectrograms until the budget is kept
+    private void evict() {
+        Iterator<Map.Entry<Key, Spectrogram>> iterator = entries.entrySet()
+                .iterator();
+        while (bytes > maxBytes && iterator.hasNext()) {
+            bytes -= getSize(iterator.next().getValue());
+            iterator.remove();
+            evictionCount++;
+        }
+    }
+
+    // drop the spectrograms of the waves collected, their keys are queued
+    private void removeCollected() {
+        Key key;
+        while ((key = (Key) collectedWaves.poll()) != null) {
+            Spectrogram spectrogram = entries.remove(key);
+            if (spectrogram != null) {
+                bytes -= getSize(spectrogram);
+                invalidationCount++;
+            }
+        }
+    }
+
+    // drop the spectrograms of former data of the wave
+    private void removeFormerData(Wave wave) {
+        Iterator<Map.Entry<Key, Spectrogram>> iterator = entries.entrySet()
+                .iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Key, Spectrogram> entry = iterator.next();
+            Key key = entry.getKey();
+            if (key.get() == wave && key.dataVersion != wave.getDataVersion()) {
+                bytes -= getSize(entry.getValue());
+                iterator.remove();
+                invalidationCount++;
+            }
+        }
+    }
+
+    /**
+     * Drop the spectrograms of a wave
+     *
+     * @param wave
+     *            the wave
+     */
+    public synchronized void remove(Wave wave) {
+        removeCollected();
+        Iterator<Map.Entry<Key, Spectrogram>> iterator = entries.entrySet()
+                .iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Key, Spectrogram> entry = iterator.next();
+            if (entry.getKey().get() == wave) {
+                bytes -= getSize(entry.getValue());
+                iterator.remove();
+                invalidationCount++;
+            }
+        }
+    }
+
+    /**
+     * Drop all the spectrograms, the statistics are kept
+     */
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    /**
+     * Reset the hit, miss, eviction and invalidation counts
+     */
+    public synchronized void resetStatistics() {
+        hitCount = 0;
+        missCount = 0;
+        invalidationCount = 0;
+        evictionCount = 0;
+    }
+
+    /**
+     * @return number of spectrograms kept
+     */
+    public synchronized int size() {
+        removeCollected();
+        return entries.size();
+    }
+
+    /**
+     * @return bytes of the spectrograms kept
+     */
+    public synchronized long getBytes() {
+        removeCollected();
+        return bytes;
+    }
+
+    /**
+     * @return max. bytes of the spectrograms kept
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * @return number of requests answered from the cache
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return number of requests that built a spectrogram
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * @return hits per request, 0 before the first request
+     */
+    public synchronized double getHitRate() {
+        long requestCount = hitCount + missCount;
+        return requestCount == 0 ? 0 : (double) hitCount / requestCount;
+    }
+
+    /**
+     * @return number of spectrograms dropped to stay within the max. bytes
+     */
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * @return number of spectrograms dropped because the data of their wave
+     *         changed, or the wave was removed or collected
+     */
+    public synchronized long getInvalidationCount() {
+        return invalidationCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        removeCollected();
+        return "size: " + entries.size() + ", bytes: " + bytes + "/"
+                + maxBytes + ", hits: " + hitCount + ", misses: " + missCount
+                + ", evictions: " + evictionCount + ", invalidations: "
+                + invalidationCount;
+    }
+
+    // a wave by identity, at a version of its data, and the settings. The
+    // key of an entry is queued once its wave is collected.
+    private static final class Key extends WeakReference<Wave> {
+
+        private final int waveHashCode;
+        private final int dataVersion;
+        private final SpectrogramSettings settings;
+
+        Key(Wave wave, SpectrogramSettings settings,
+                ReferenceQueue<Wave> queue) {
+            super(wave, queue);
+            this.waveHashCode = System.identityHashCode(wave);
+            this.dataVersion = wave.getDataVersion();
+            this.settings = new SpectrogramSettings(settings);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = waveHashCode;
+            result = 31 * result + dataVersion;
+            result = 31 * result + settings.hashCode();
+            return result;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == this) {
+                // a key queued is still found once its wave is collected
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            Wave thisWave = get();
+            return thisWave != null && thisWave == other.get()
+                    && dataVersion == other.dataVersion
+                    && settings.equals(other.settings);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2011 Jacquet Wong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.musicg.wave.extension;
+
+import com.musicg.dsp.WindowType;
+
+/**
+ * The parameters deciding the content of a spectrogram. A spectrogram copies
+ * its settings, changing them afterwards has no effect on it.
+ *
+ * @author Jacquet Wong
+ */
+public class SpectrogramSettings {
+
+    private int fftSampleSize = Spectrogram.SPECTROGRAM_DEFAULT_FFT_SAMPLE_SIZE;
+    private int overlapFactor = Spectrogram.SPECTROGRAM_DEFAULT_OVERLAP_FACTOR;
+    private boolean realTransform = false;
+    private WindowType windowType = WindowType.HAMMING;
+
+    /**
+     * Constructor with the default settings.
+     */
+    public SpectrogramSettings() {
+    }
+
+    /**
+     * Constructor
+     *
+     * @param fftSampleSize
+     *            number of sample in fft, the value needed to be a number to
+     *            power of 2
+     * @param overlapFactor
+     *            1/overlapFactor overlapping, e.g. 1/4=25% overlapping, 0 for
+     *            no overlapping
+     */
+    public SpectrogramSettings(int fftSampleSize, int overlapFactor) {
+        this.fftSampleSize = fftSampleSize;
+        this.overlapFactor = overlapFactor;
+    }
+
+    /**
+     * Copy constructor
+     *
+     * @param settings
+     *            settings to copy
+     */
+    public SpectrogramSettings(SpectrogramSettings settings) {
+        this.fftSampleSize = settings.fftSampleSize;
+        this.overlapFactor = settings.overlapFactor;
+        this.realTransform = settings.realTransform;
+        this.windowType = settings.windowType;
+    }
+
+    /**
+     * @return FFT sample size
+     */
+    public int getFftSampleSize() {
+        return fftSampleSize;
+    }
+
+    /**
+     * @param fftSampleSize
+     *            number of sample in fft, the value needed to be a number to
+     *            power of 2
+     */
+    public void setFftSampleSize(int fftSampleSize) {
+        this.fftSampleSize = fftSampleSize;
+    }
+
+    /**
+     * @return overlap factor
+     */
+    public int getOverlapFactor() {
+        return overlapFactor;
+    }
+
+    /**
+     * @param overlapFactor
+     *            1/overlapFactor overlapping, e.g. 1/4=25% overlapping, 0 for
+     *            no overlapping
+     */
+    public void setOverlapFactor(int overlapFactor) {
+        this.overlapFactor = overlapFactor;
+    }
+
+    /**
+     * @return true if the frames go through a real transform
+     */
+    public boolean isRealTransform() {
+        return realTransform;
+    }
+
+    /**
+     * @param realTransform
+     *            true for the fftSampleSize/2+1 bins of a real transform, from
+     *            0 to the Nyquist frequency, false for the fftSampleSize/4
+     *            units of the default transform
+     */
+    public void setRealTransform(boolean realTransform) {
+        this.realTransform = realTransform;
+    }
+
+    /**
+     * @return window applied on the frames
+     */
+    public WindowType getWindowType() {
+        return windowType;
+    }
+
+    /**
+     * @param windowType
+     *            window applied on the frames, WindowType.HAMMING by default
+     */
+    public void setWindowType(WindowType windowType) {
+        this.windowType = windowType;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = fftSampleSize;
+        result = 31 * result + overlapFactor;
+        result = 31 * result + (realTransform ? 1 : 0);
+        result = 31 * result + windowType.hashCode();
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof SpectrogramSettings)) {
+            return false;
+        }
+        SpectrogramSettings other = (SpectrogramSettings) obj;
+        return fftSampleSize == other.fftSampleSize
+                && overlapFactor == other.overlapFactor
+                && realTransform == other.realTransform
+                && windowType == other.windowType;
+    }
+
+    @Override
+    public String toString() {
+        return "fftSampleSize: " + fftSampleSize + ", overlapFactor: "
+                + overlapFactor + ", realTransform: " + realTransform
+                + ", windowType: " + windowType;
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2011 Jacquet Wong
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.musicg.wave.extension;
+
+import java.io.IOException;
+import java.nio.DoubleBuffer;
+
+import com.musicg.dsp.FastFourierTransform;
+import com.musicg.dsp.WindowFunction;
+import com.musicg.wave.SampleSource;
+import com.musicg.wave.WaveReader;
+
+/**
+ * Computes the absolute frames of a spectrogram one after the other while a
+ * {@link WaveReader}, or another {@link SampleSource}, is read, keeping only
+ * the samples of one frame. The
+ * frames are the ones of {@link Spectrogram} with the same settings; the
+ * normalized intensities need the whole spectrogram and are not available.
+ *
+ * @author Jacquet Wong
+ */
+public class StreamingSpectrogram {
+
+    private final SampleSource source;
+    private final FastFourierTransform fft;
+    private final DoubleBuffer window;
+    private final double[] signal;
+    private final float[] samples; // samples of the frame, from bufferStart
+    private int fftSampleSize; // number of sample in fft, the value needed to
+                               // be a number to power of 2
+    private int overlapFactor; // 1/overlapFactor overlapping, e.g. 1/4=25%
+                               // overlapping
+    private boolean overlapping;
+    private int hopSize; // samples between the starts of two frames
+    private int numFrequencyUnit; // number of y-axis unit
+    private double unitFrequency; // frequency per y-axis unit
+    private long bufferStart; // sample number of samples[0]
+    private int bufferCount; // number of samples in samples
+    private long numSamples = -1; // known once the source reached the end
+    private long numFrames = -1;
+    private long frame; // number of the next frame
+
+    /**
+     * Constructor
+     *
+     * @param source
+     *            source of the samples, e.g. a WaveReader at the start of the
+     *            data
+     * @param settings
+     *            FFT sample size, overlap factor and transform of the frames
+     */
+    public StreamingSpectrogram(SampleSource source,
+            SpectrogramSettings settings) {
+        this.source = source;
+
+        if (Integer.bitCount(settings.getFftSampleSize()) == 1) {
+            this.fftSampleSize = settings.getFftSampleSize();
+        } else {
+            System.err.print("The input number must be a power of 2");
+            this.fftSampleSize = Spectrogram.SPECTROGRAM_DEFAULT_FFT_SAMPLE_SIZE;
+        }
+        this.overlapFactor = settings.getOverlapFactor();
+
+        // the frames of FrameSampler
+        overlapping = overlapFactor > 1;
+        hopSize = overlapping ? fftSampleSize - fftSampleSize
+                * (overlapFactor - 1) / overlapFactor : fftSampleSize;
+
+        fft = new FastFourierTransform(settings.isRealTransform());
+        numFrequencyUnit = fft.getNumMagnitudes(fftSampleSize);
+        int sampleRate = source.getSampleRate();
+        if (settings.isRealTransform()) {
+            unitFrequency = (double) sampleRate / fftSampleSize;
+        } else {
+            unitFrequency = (double) sampleRate / 2 / numFrequencyUnit;
+        }
+
+        window = WindowFunction.getWindow(settings.getWindowType(),
+                fftSampleSize);
+        signal = new double[fftSampleSize];
+        samples = new float[fftSampleSize];
+    }
+
+    /**
+     * Compute the next frame
+     *
+     * @param spectrum
+     *            destination of the absolute intensities of the frame,
+     *            getNumFrequencyUnit() of them
+     * @return false if there is no frame left
+     * @throws IOException
+     *             IO exception
+     */
+    public boolean nextFrame(double[] spectrum) throws IOException {
+        long startSample = frame * hopSize;
+        fill(startSample);
+
+        if (numFrames >= 0 && frame >= numFrames) {
+            return false;
+        }
+
+        // a frame is complete when its first fftSampleSize-1 samples exist
+        int last = fftSampleSize - 1;
+        if (bufferCount >= (overlapping ? last : fftSampleSize)) {
+            for (int n = 0; n < last; n++) {
+                signal[n] = samples[n] * window.get(n);
+            }
+            // an overlapped frame ends with the last sample of its hop, the
+            // way Spectrogram lays out its frames
+            signal[last] = samples[overlapping ? hopSize - 1 : last]
+                    * window.get(last);
+        } else {
+            // only the first incomplete frame has samples, the frames after
+            // it are silent
+            int available = Math.min(bufferCount, last);
+            for (int n = 0; n < available; n++) {
+                signal[n] = samples[n] * window.get(n);
+            }
+            for (int n = available; n < fftSampleSize; n++) {
+                signal[n] = 0;
+            }
+            bufferCount = 0;
+        }
+
+        fft.getMagnitudes(signal, spectrum, 0);
+        frame++;
+        return true;
+    }
+
+    // move the samples of the frame starting at startSample to the start of
+    // the buffer and read the missing ones
+    private void fill(long startSample) throws IOException {
+        int drop = (int) Math.min(startSample - bufferStart, bufferCount);
+        if (drop > 0) {
+            System.arraycopy(samples, drop, samples, 0, bufferCount - drop);
+            bufferCount -= drop;
+        }
+        bufferStart = startSample;
+
+        while (bufferCount < fftSampleSize && numSamples < 0) {
+            int n = source.read(samples, bufferCount, fftSampleSize
+                    - bufferCount);
+            if (n < 0) {
+                // the number of frames of Spectrogram, from the number of
+                // samples
+                numSamples = bufferStart + bufferCount;
+                numFrames = overlapping ? numSamples * overlapFactor
+                        / fftSampleSize : numSamples / fftSampleSize;
+            } else {
+                bufferCount += n;
+            }
+        }
+    }
+
+    /**
+     * @return number of frames computed so far
+     */
+    public long getFrameNumber() {
+        return frame;
+    }
+
+    /**
+     * @return number of y-axis unit
+     */
+    public int getNumFrequencyUnit() {
+        return numFrequencyUnit;
+    }
+
+    /**
+     * @return frequency per y-axis unit
+     */
+    public double getUnitFrequency() {
+        return unitFrequency;
+    }
+
+    /**
+     * @return FFT sample size
+     */
+    public int getFftSampleSize() {
+        return fftSampleSize;
+    }
+
+    /**
+     * @return overlap factor
+     */
+    public int getOverlapFactor() {
+        return overlapFactor;
+    }
+}